@@ -0,0 +1,110 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Synthetic data for benchmarks. Data is generated with fixed seed,
+ * so results of different runs can be compared.
+ * @author gsikorskiy
+ *
+ */
+public final class BenchmarkFixtures {
+
+	private static final long SEED = 42;
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int BORDER = 16;
+
+	private static final String[] LINK_LINES = {
+		"Open page: http://localhost:8080/catalog/items?page=1",
+		"Response from https://api.example.com/v1/users, status 200",
+		"Element .header found on http://localhost/main after 15 ms",
+	};
+	private static final String[] PLAIN_LINES = {
+		"Cleaning up after test.",
+		"Looking for Sign in",
+		"Default timeout is 30",
+	};
+
+	private BenchmarkFixtures() { }
+
+	/**
+	 * Creates screenshot like picture: noise inside of white border.
+	 * @param size - size in format WIDTHxHEIGHT, for example 1920x1080.
+	 * @param type - type of BufferedImage.
+	 * @return generated picture.
+	 */
+	public static BufferedImage picture(final String size, final int type) {
+		final String[] dimensions = size.split("x");
+		final int width = Integer.parseInt(dimensions[0]);
+		final int height = Integer.parseInt(dimensions[1]);
+		final BufferedImage image = new BufferedImage(width, height, type);
+		final Random random = new Random(SEED);
+		final int[] row = new int[width];
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				final boolean border = i < BORDER || j < BORDER || i >= width - BORDER || j >= height - BORDER;
+				row[i] = border ? WHITE : random.nextInt() | 0xFF000000;
+			}
+			image.setRGB(0, j, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	/**
+	 * Copy of picture with changed square in the center.
+	 * @param picture - original picture.
+	 * @param changed - side of changed square.
+	 * @return changed copy.
+	 */
+	public static BufferedImage changed(final BufferedImage picture, final int changed) {
+		final BufferedImage copy = new BufferedImage(picture.getWidth(), picture.getHeight(), picture.getType());
+		copy.setData(picture.getData());
+		final int x0 = (picture.getWidth() - changed) / 2;
+		final int y0 = (picture.getHeight() - changed) / 2;
+		for (int j = y0; j < y0 + changed; j++) {
+			for (int i = x0; i < x0 + changed; i++) {
+				copy.setRGB(i, j, ~copy.getRGB(i, j) | 0xFF000000);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Text, written in language.
+	 * @param language - language of text.
+	 * @return text of several sentences.
+	 */
+	public static String text(final Language language) {
+		switch (language) {
+		case FR:
+			return "Le chat dort sur le canape pendant que les enfants jouent dans le jardin. "
+					+ "Nous allons au marche chaque samedi pour acheter des legumes frais.";
+		case ES:
+			return "El gato duerme en el sofa mientras los ninos juegan en el jardin. "
+					+ "Vamos al mercado cada sabado para comprar verduras frescas.";
+		default:
+			return "The cat sleeps on the sofa while the children play in the garden. "
+					+ "We go to the market every Saturday to buy fresh vegetables.";
+		}
+	}
+
+	/**
+	 * Generates log lines, part of them contains links.
+	 * @param count - amount of lines.
+	 * @param linkPercent - percent of lines with links.
+	 * @return log lines.
+	 */
+	public static String[] logLines(final int count, final int linkPercent) {
+		final Random random = new Random(SEED);
+		final String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			final String[] source = random.nextInt(100) < linkPercent ? LINK_LINES : PLAIN_LINES;
+			lines[i] = "2016-01-01_10:00:00.000 [main] INFO  - " + source[random.nextInt(source.length)] + " " + i;
+		}
+		return lines;
+	}
+}
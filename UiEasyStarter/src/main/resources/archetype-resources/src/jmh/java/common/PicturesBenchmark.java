@@ -0,0 +1,93 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of pictures comparison.
+ * @author gsikorskiy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PicturesBenchmark {
+
+	private static final int CHANGED_SIDE = 50;
+
+	@Param({"640x480", "1920x1080", "3840x2160"})
+	private String size;
+
+	@Param({"" + BufferedImage.TYPE_INT_RGB, "" + BufferedImage.TYPE_4BYTE_ABGR})
+	private int type;
+
+	private BufferedImage expected;
+	private BufferedImage actual;
+
+	/**
+	 * Generates pictures.
+	 */
+	@Setup
+	public void setUp() {
+		this.expected = BenchmarkFixtures.picture(this.size, this.type);
+		this.actual = BenchmarkFixtures.changed(this.expected, CHANGED_SIDE);
+	}
+
+	/**
+	 * @return diff picture.
+	 */
+	@Benchmark
+	public BufferedImage imageDiff() {
+		return Assertion.imageDiff(this.actual, this.expected);
+	}
+
+	/**
+	 * @return cropped picture.
+	 */
+	@Benchmark
+	public BufferedImage crop() {
+		return Assertion.crop(this.actual);
+	}
+
+	/**
+	 * @return result of comparison of equal pictures.
+	 */
+	@Benchmark
+	public boolean equalPictures() {
+		return Pictures.equal(this.expected, this.expected);
+	}
+
+	/**
+	 * @return result of tiled comparison.
+	 */
+	@Benchmark
+	public PictureDiff compare() {
+		return Pictures.compare(this.actual, this.expected, 0);
+	}
+
+	/**
+	 * @return hash of pixels.
+	 */
+	@Benchmark
+	public byte[] hash() {
+		return Pictures.hash(this.actual);
+	}
+}
@@ -0,0 +1,74 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import common.BenchmarkFixtures;
+
+/**
+ * Benchmarks of report decoration.
+ * @author gsikorskiy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportingBenchmark {
+
+	private static final int LINES = 1000;
+	private static final int LINK_PERCENT = 30;
+
+	private String[] lines;
+
+	/**
+	 * Generates log lines.
+	 */
+	@Setup
+	public void setUp() {
+		this.lines = BenchmarkFixtures.logLines(LINES, LINK_PERCENT);
+	}
+
+	/**
+	 * Decorates links in all generated lines.
+	 * @param blackhole - consumer of results.
+	 */
+	@Benchmark
+	public void decorateLink(final Blackhole blackhole) {
+		for (final String line : this.lines) {
+			if (line.contains("http:") || line.contains("https:")) {
+				blackhole.consume(ReportAppender.decorateLink(line));
+			} else {
+				blackhole.consume(line);
+			}
+		}
+	}
+
+	/**
+	 * Builds expand/collapse blocks for all generated lines.
+	 * @param blackhole - consumer of results.
+	 */
+	@Benchmark
+	public void reportDropdownBlock(final Blackhole blackhole) {
+		for (int i = 0; i < this.lines.length; i++) {
+			blackhole.consume(CommonReporter.buildDropdownBlock(this.lines[i],
+					ReportColor.STEP.getColor(), String.valueOf(i)));
+		}
+	}
+}
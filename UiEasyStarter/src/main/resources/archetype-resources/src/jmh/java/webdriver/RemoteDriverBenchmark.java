@@ -0,0 +1,93 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebDriver;
+
+import pages.MainPage;
+import pages.Page;
+
+/**
+ * Benchmarks of framework code over RemoteWebDriver, connected to FakeGridHub.
+ * Difference between results with and without latency is time of Grid, the rest is framework overhead.
+ * @author gsikorskiy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dgrid.hub=http://localhost:" + RemoteDriverBenchmark.HUB_PORT + "/wd/hub",
+		"-Dtest.site=" + RemoteDriverBenchmark.SITE})
+public class RemoteDriverBenchmark {
+
+	/**
+	 * Port of fake hub. Url of hub is passed to fork as -Dgrid.hub, because Environment is initialized
+	 * by the first log line, that is written before benchmark could set it.
+	 */
+	static final int HUB_PORT = 4445;
+	static final String SITE = "http://localhost/main";
+
+	/**
+	 * Delay of every command in milliseconds.
+	 */
+	@Param({"0", "5"})
+	private long latency;
+
+	private FakeGridHub hub;
+	private Browser browser;
+
+	/**
+	 * Starts hub on port, that -Dgrid.hub of fork points to. Every parameter value runs in own fork.
+	 */
+	@Setup
+	public void setUp() {
+		this.hub = FakeGridHub.start(HUB_PORT).withLatency(this.latency, TimeUnit.MILLISECONDS);
+		this.browser = new Browser(BrowserName.FIREFOX);
+		this.browser.setPlatform("LINUX");
+		WebDriverStorage.addDriver(this.browser);
+	}
+
+	/**
+	 * Releases driver and stops hub.
+	 */
+	@TearDown
+	public void tearDown() {
+		WebDriverStorage.removeDriver();
+		this.hub.close();
+	}
+
+	/**
+	 * Starts and quits remote session.
+	 */
+	@Benchmark
+	public void startSession() {
+		final WebDriver driver = WebDriverFactory.getInstance(this.browser);
+		driver.quit();
+	}
+
+	/**
+	 * Opens page object and reads text of its element.
+	 * @return text of header.
+	 */
+	@Benchmark
+	public String openPage() {
+		return Page.open(SITE, MainPage.class).getHeaderText();
+	}
+}
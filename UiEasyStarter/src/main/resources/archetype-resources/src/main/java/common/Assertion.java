@@ -2,18 +2,18 @@
 #set( $symbol_dollar = '$' )
 #set( $symbol_escape = '\' )
 package common;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.DataBufferInt;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Optional;
 
 import javax.imageio.ImageIO;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.testng.Assert;
 import org.testng.ITestResult;
 import org.testng.Reporter;
@@ -28,10 +28,15 @@ import reporting.ScreenshotHTMLReporter;
  */
 public final class Assertion extends Assert {
 
+	private static final double FULL_DIFF = 100;
+	private static final int SIMILAR_DISTANCE = 10;
+
 	private Assertion() { }
 
 	/**
-	 * Check that pictures are equals. Firstly it compares md5.
+	 * Check that pictures are equals. Firstly it compares hash of actual pixels
+	 * with hash of expected picture from baseline index, so expected picture
+	 * is decoded only if it isn't indexed yet or differs.
 	 * If it fails, looking for differences.
 	 * @param actual - actual picture.
 	 * @param expected - expected picture.
@@ -40,12 +45,30 @@ public final class Assertion extends Assert {
 	public static void assertEqualsPictures(final File actual,
 											final File expected,
 											final String message) {
-		if (getMD5(actual).equals(getMD5(expected))) {
-	    	return;
-	    }
 		try {
+			if (Math.max(PictureStreams.pixels(actual), PictureStreams.pixels(expected))
+					> Environment.PICTURE_STREAMING_PIXELS) {
+				assertEqualsLargePictures(actual, expected, message);
+				return;
+			}
 			final BufferedImage actualImage = crop(ImageIO.read(actual));
+			final byte[] actualHash = Pictures.hash(actualImage);
+			final Optional<BaselineIndex> index = BaselineIndex.getDefault();
+			final Optional<BaselineIndex.Entry> baseline = index.flatMap(i -> i.find(expected));
+			if (baseline.isPresent()) {
+				if (baseline.get().isSameAs(actualImage, actualHash)) {
+					return;
+				}
+				if (!baseline.get().hasSizeOf(actualImage) && Environment.PICTURE_MAX_DIFF < FULL_DIFF) {
+					fail(message + " Pictures have different sizes.");
+				}
+				reportSimilarity(baseline.get(), Pictures.perceptualHash(actualImage), expected);
+			}
 		   	final BufferedImage expectedImage = crop(ImageIO.read(expected));
+			if (index.isPresent() && !baseline.isPresent()
+					&& index.get().update(expected, expectedImage).isSameAs(actualImage, actualHash)) {
+				return;
+			}
 		   	assertEqualsPictures(actualImage, expectedImage, message);
 		} catch (final IOException e) {
 		   	fail(message, e);
@@ -53,63 +76,131 @@ public final class Assertion extends Assert {
 	}
 
 	/**
-	 * Check that pictures are equals. Firstly it compares md5.
+	 * Same as assertEqualsPictures for files, but pictures are read row by row.
+	 * Used for pictures with more than -Dpicture.streaming.pixels pixels.
+	 */
+	private static void assertEqualsLargePictures(final File actual, final File expected,
+			final String message) throws IOException {
+		final Rectangle actualArea = PictureStreams.cropBounds(actual);
+		final BaselineIndex.Entry actualEntry = PictureStreams.fingerprint(actual, actualArea);
+		final Optional<BaselineIndex> index = BaselineIndex.getDefault();
+		BaselineIndex.Entry baseline = index.flatMap(i -> i.find(expected)).orElse(null);
+		if (baseline != null && baseline.isSameAs(actualEntry)) {
+			return;
+		}
+		final Rectangle expectedArea = PictureStreams.cropBounds(expected);
+		if (baseline == null) {
+			baseline = PictureStreams.fingerprint(expected, expectedArea);
+			if (index.isPresent()) {
+				index.get().update(expected, baseline);
+			}
+			if (baseline.isSameAs(actualEntry)) {
+				return;
+			}
+		}
+		if (actualArea.width != expectedArea.width || actualArea.height != expectedArea.height) {
+			if (Environment.PICTURE_MAX_DIFF < FULL_DIFF) {
+				fail(message + " Pictures have different sizes.");
+			}
+			return;
+		}
+		reportSimilarity(baseline, actualEntry.getPerceptualHash(), expected);
+		final File outputfile = diffFile();
+		final PictureDiff diff = PictureStreams.compare(actual, actualArea, expected, expectedArea,
+				Environment.PICTURE_TOLERANCE, outputfile);
+		if (diff.getDiffPercent() <= Environment.PICTURE_MAX_DIFF) {
+			Files.deleteIfExists(outputfile.toPath());
+			if (!diff.isEmpty()) {
+				CommonReporter.printInfo("Pictures are equal with accuracy: " + diff);
+			}
+			return;
+		}
+		CommonReporter.printScreenshot("Actual(left) picture has"
+				+ " the following differences with expected(right): ", outputfile);
+		fail(message + " " + diff);
+	}
+
+	private static void reportSimilarity(final BaselineIndex.Entry baseline, final long perceptualHash,
+			final File expected) {
+		final int distance = Pictures.distance(baseline.getPerceptualHash(), perceptualHash);
+		if (distance <= SIMILAR_DISTANCE) {
+			CommonReporter.printInfo("Picture is similar to " + expected.getName()
+					+ ", distance of perceptual hashes is " + distance);
+		}
+	}
+
+	/**
+	 * Check that pictures are equals. Firstly it compares pixels.
+	 * If it fails, looking for differences. Works with BufferedImage files.
+	 * Tolerance is taken from -Dpicture.tolerance and -Dpicture.max.diff options.
+	 * @param actual - actual picture.
+	 * @param expected - expected picture.
+	 * @param message - message to write to log if fails.
+	 * @return found differences.
+	 */
+	public static PictureDiff assertEqualsPictures(final BufferedImage actual,
+											final BufferedImage expected,
+											final String message) {
+		return assertEqualsPictures(actual, expected, Environment.PICTURE_TOLERANCE,
+				Environment.PICTURE_MAX_DIFF, message);
+	}
+
+	/**
+	 * Check that pictures are equals with accuracy. Firstly it compares pixels.
 	 * If it fails, looking for differences. Works with BufferedImage files
 	 * @param actual - actual picture.
 	 * @param expected - expected picture.
+	 * @param tolerance - allowed difference of every color channel (0-255).
+	 * @param maxDiffPercent - allowed percent of different pixels.
 	 * @param message - message to write to log if fails.
+	 * @return found differences.
 	 */
-	public static void assertEqualsPictures(final BufferedImage actual,
+	public static PictureDiff assertEqualsPictures(final BufferedImage actual,
 											final BufferedImage expected,
+											final int tolerance,
+											final double maxDiffPercent,
 											final String message) {
-		if (getMD5(actual).equals(getMD5(expected))) {
-	    	return;
+		if (Pictures.equal(actual, expected)) {
+	    	return PictureDiff.none(actual.getWidth(), actual.getHeight());
 	    }
+		final PictureDiff diff = Pictures.compare(actual, expected, tolerance);
+		if (diff.getDiffPercent() <= maxDiffPercent) {
+			CommonReporter.printInfo("Pictures are equal with accuracy: " + diff);
+			return diff;
+		}
+		if (actual.getWidth() != expected.getWidth() || actual.getHeight() != expected.getHeight()) {
+			fail(message + " Pictures have different sizes.");
+		}
 		try {
-			final ITestResult tr = Reporter.getCurrentTestResult();
-
-			final StringBuilder fileName = new StringBuilder();
-			final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss");
-			final String timestamp = dateFormatter.format(new Date());
-			fileName.append(timestamp + " DiffImage ");
-			fileName.append(tr.getTestContext().getName() + " ");
-			fileName.append(tr.getMethod().getMethodName() + " ");
-			fileName.append(ScreenshotHTMLReporter.FILE_EXTENSION);
-
-			final File outputfile = new File(Environment.SCREENSHOT_PATH + File.separator
-	    			+ fileName.toString().replaceAll(" ", "_"));
-
+			final File outputfile = diffFile();
 			ImageIO.write(imageDiff(actual, expected), "png", outputfile);
 			CommonReporter.printScreenshot("Actual(left) picture has"
 					+ " the following differences with expected(right): ", outputfile);
 	    } catch (final IOException e) {
 	    	fail(message, e);
-		} finally {
-			//if md5 hash not equals one to another, then show difference and fail.
-			//TODO make fail with accuracy in %.
-			fail(message);
 		}
+		fail(message + " " + diff);
+		return diff;
 	}
 
-	private static String getMD5(final BufferedImage img) {
-		String md5 = "";
-		try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-			ImageIO.write(img, "png", baos);
-			md5 = DigestUtils.md5Hex(new ByteArrayInputStream(baos.toByteArray()));
-		} catch (final IOException e) {
-			fail("Can't get md5 for buffered image. ", e);
-		}
-		return md5;
-	}
+	/**
+	 * Creates name of file for differences of pictures in the current test.
+	 */
+	private static File diffFile() throws IOException {
+		final ITestResult tr = Reporter.getCurrentTestResult();
 
-	private static String getMD5(final File f) {
-		String md5 = "";
-		try (FileInputStream fis = new FileInputStream(f)) {
-			md5 = DigestUtils.md5Hex(fis);
-		} catch (final IOException e) {
-			fail("Can't get md5 for file: " + f.getAbsolutePath(), e);
-		}
-		return md5;
+		final StringBuilder fileName = new StringBuilder();
+		final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss");
+		final String timestamp = dateFormatter.format(new Date());
+		fileName.append(timestamp + " DiffImage ");
+		fileName.append(tr.getTestContext().getName() + " ");
+		fileName.append(tr.getMethod().getMethodName() + " ");
+		fileName.append(ScreenshotHTMLReporter.FILE_EXTENSION);
+
+		final File outputfile = new File(Environment.SCREENSHOT_PATH + File.separator
+				+ fileName.toString().replaceAll(" ", "_"));
+		Files.createDirectories(outputfile.getParentFile().toPath());
+		return outputfile;
 	}
 
 	/**
@@ -123,16 +214,22 @@ public final class Assertion extends Assert {
 		final int height = image1.getHeight();
 		final int white = 0x00FFFFFF;
 		final BufferedImage img = new BufferedImage(2 * width, height, BufferedImage.TYPE_INT_RGB);
-		for (int i = 0; i < width; i++) {
-		    for (int j = 0; j < height; j++) {
-		    	final int rgb1 = image1.getRGB(i, j);
-		    	final int rgb2 = image2.getRGB(i, j);
+		final int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		final int[] row1 = new int[width];
+		final int[] row2 = new int[width];
+		for (int j = 0; j < height; j++) {
+			Pictures.readRow(image1, 0, j, width, row1);
+			Pictures.readRow(image2, 0, j, width, row2);
+			final int offset = 2 * width * j;
+		    for (int i = 0; i < width; i++) {
+		    	final int rgb1 = row1[i];
+		    	final int rgb2 = row2[i];
 		    	if (rgb1 == rgb2) {
-		    		img.setRGB(i, j, rgb1);
+		    		pixels[offset + i] = rgb1 & white;
 		    	} else {
-			    	img.setRGB(i, j, (rgb2 - rgb1) ^ white);
+		    		pixels[offset + i] = ((rgb2 - rgb1) ^ white) & white;
 		    	}
-		    	img.setRGB(width + i, j, rgb2);
+		    	pixels[offset + width + i] = rgb2 & white;
 		    }
 		}
 		return img;
@@ -150,33 +247,35 @@ public final class Assertion extends Assert {
 		int maxW = 0;
 		int minH = height;
 		int maxH = 0;
-		for (int i = 0; i < width; i++) {
-		    for (int j = 0; j < height; j++) {
-		    	final int rgb = image.getRGB(i, j);
-		    	if (rgb != -1 && i < minW) {
-		    		minW = i;
-		    	}
-		    	if (rgb != -1 && i > maxW) {
-		    		maxW = i;
-		    	}
-		    	if (rgb != -1 && j < minH) {
-		    		minH = j;
-		    	}
-		    	if (rgb != -1 && j > maxH) {
-		    		maxH = j;
-		    	}
-		    }
+		final int[] row = new int[width];
+		for (int j = 0; j < height; j++) {
+			Pictures.readRow(image, 0, j, width, row);
+			int first = 0;
+			while (first < width && row[first] == -1) {
+				first++;
+			}
+			if (first == width) {
+				continue;
+			}
+			int last = width - 1;
+			while (row[last] == -1) {
+				last--;
+			}
+			minW = Math.min(minW, first);
+			maxW = Math.max(maxW, last);
+			minH = Math.min(minH, j);
+			maxH = Math.max(maxH, j);
 		}
-		final BufferedImage img = new BufferedImage(maxW - minW, maxH - minH, BufferedImage.TYPE_INT_RGB);
-		int k = 0;
-		for (int i = minW; i < maxW; i++) {
-			int l = 0;
-			for (int j = minH; j < maxH; j++) {
-		    	final int rgb = image.getRGB(i, j);
-		    	img.setRGB(k, l, rgb);
-		    	l++;
-	    	}
-		    k++;
+		final int cropWidth = maxW - minW;
+		final int cropHeight = maxH - minH;
+		final BufferedImage img = new BufferedImage(cropWidth, cropHeight, BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		for (int l = 0; l < cropHeight; l++) {
+			Pictures.readRow(image, minW, minH + l, cropWidth, row);
+			final int offset = l * cropWidth;
+			for (int k = 0; k < cropWidth; k++) {
+				pixels[offset + k] = row[k] & 0x00FFFFFF;
+			}
 	    }
 		return img;
 	}
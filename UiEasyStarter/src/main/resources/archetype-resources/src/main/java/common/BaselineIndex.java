@@ -0,0 +1,303 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent index of baseline pictures in memory-mapped file.
+ * For every baseline it keeps modification time, file length, size of cropped picture,
+ * md5 of its pixels and perceptual hash, so baseline doesn't have to be decoded
+ * while file is not changed. Index can be shared by several JVMs, updates are done under exclusive file lock
+ * and records are read under shared one, so record, rewritten by other JVM, is never read half-written.
+ * @author gsikorskiy
+ *
+ */
+public final class BaselineIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(BaselineIndex.class);
+
+	private static final int MAGIC = 0x42494458;
+	private static final int VERSION = 1;
+	private static final int COUNT_OFFSET = 8;
+	private static final int HEADER = 16;
+	private static final int RECORD = 64;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MODIFIED = 16;
+	private static final int LENGTH = 24;
+	private static final int WIDTH = 32;
+	private static final int HEIGHT = 36;
+	private static final int PIXEL_HASH = 40;
+	private static final int PIXEL_HASH_LENGTH = 16;
+	private static final int PERCEPTUAL_HASH = 56;
+
+	private static volatile Optional<BaselineIndex> instance;
+
+	private final FileChannel channel;
+	private final Map<Key, Integer> slots = new HashMap<>();
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private int loaded;
+
+	private BaselineIndex(final Path file) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try (FileLock lock = this.channel.lock()) {
+			final long size = this.channel.size();
+			if (size >= HEADER + RECORD) {
+				this.map((int) ((size - HEADER) / RECORD));
+			}
+			if (this.buffer == null || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+				log.debug("Create new baseline index " + file);
+				this.map(INITIAL_CAPACITY);
+				this.buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(COUNT_OFFSET, 0);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves index from -Dbaseline.index file. It is opened once per JVM.
+	 * @return index or empty value if file can't be opened.
+	 */
+	public static Optional<BaselineIndex> getDefault() {
+		if (instance == null) {
+			synchronized (BaselineIndex.class) {
+				if (instance == null) {
+					try {
+						instance = Optional.of(new BaselineIndex(Paths.get(Environment.BASELINE_INDEX)));
+					} catch (final IOException e) {
+						log.error("Baseline index " + Environment.BASELINE_INDEX + " can't be opened.", e);
+						instance = Optional.empty();
+					}
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Searches baseline in index.
+	 * @param baseline - baseline file.
+	 * @return entry, if file was indexed and hasn't changed since that.
+	 */
+	public synchronized Optional<Entry> find(final File baseline) {
+		try (FileLock lock = this.channel.lock(0, Long.MAX_VALUE, true)) {
+			this.refresh();
+			final Integer slot = this.slots.get(Key.of(baseline));
+			if (slot == null) {
+				return Optional.empty();
+			}
+			final int offset = HEADER + slot * RECORD;
+			if (this.buffer.getLong(offset + MODIFIED) != baseline.lastModified()
+					|| this.buffer.getLong(offset + LENGTH) != baseline.length()) {
+				return Optional.empty();
+			}
+			final byte[] pixelHash = new byte[PIXEL_HASH_LENGTH];
+			for (int i = 0; i < PIXEL_HASH_LENGTH; i++) {
+				pixelHash[i] = this.buffer.get(offset + PIXEL_HASH + i);
+			}
+			return Optional.of(new Entry(this.buffer.getInt(offset + WIDTH), this.buffer.getInt(offset + HEIGHT),
+					pixelHash, this.buffer.getLong(offset + PERCEPTUAL_HASH)));
+		} catch (final IOException e) {
+			log.error("Baseline index can't be locked, " + baseline + " is decoded.", e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Adds baseline to index or replaces its old entry.
+	 * @param baseline - baseline file.
+	 * @param image - decoded and cropped baseline picture.
+	 * @return new entry.
+	 * @throws IOException - if index can't be written.
+	 */
+	public Entry update(final File baseline, final BufferedImage image) throws IOException {
+		return this.update(baseline, new Entry(image.getWidth(), image.getHeight(),
+				Pictures.hash(image), Pictures.perceptualHash(image)));
+	}
+
+	/**
+	 * Adds baseline to index or replaces its old entry.
+	 * @param baseline - baseline file.
+	 * @param entry - size and hashes of cropped baseline picture.
+	 * @return the same entry.
+	 * @throws IOException - if index can't be written.
+	 */
+	public Entry update(final File baseline, final Entry entry) throws IOException {
+		final Key key = Key.of(baseline);
+		synchronized (this) {
+			try (FileLock lock = this.channel.lock()) {
+				this.refresh();
+				Integer slot = this.slots.get(key);
+				if (slot == null) {
+					slot = this.loaded;
+					if (slot == this.capacity) {
+						this.map(this.capacity * 2);
+					}
+				}
+				final int offset = HEADER + slot * RECORD;
+				this.buffer.putLong(offset, key.high).putLong(offset + 8, key.low)
+					.putLong(offset + MODIFIED, baseline.lastModified())
+					.putLong(offset + LENGTH, baseline.length())
+					.putInt(offset + WIDTH, entry.width)
+					.putInt(offset + HEIGHT, entry.height)
+					.putLong(offset + PERCEPTUAL_HASH, entry.perceptualHash);
+				for (int i = 0; i < PIXEL_HASH_LENGTH; i++) {
+					this.buffer.put(offset + PIXEL_HASH + i, entry.pixelHash[i]);
+				}
+				if (slot == this.loaded) {
+					this.buffer.putInt(COUNT_OFFSET, slot + 1);
+					this.slots.put(key, slot);
+					this.loaded++;
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Loads records, added by other JVMs.
+	 */
+	private void refresh() {
+		final int count = this.buffer.getInt(COUNT_OFFSET);
+		if (count > this.capacity) {
+			try {
+				this.map((int) ((this.channel.size() - HEADER) / RECORD));
+			} catch (final IOException e) {
+				throw new IllegalStateException("Baseline index can't be mapped.", e);
+			}
+		}
+		for (; this.loaded < count; this.loaded++) {
+			final int offset = HEADER + this.loaded * RECORD;
+			this.slots.put(new Key(this.buffer.getLong(offset), this.buffer.getLong(offset + 8)), this.loaded);
+		}
+	}
+
+	private void map(final int records) throws IOException {
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) records * RECORD);
+		this.capacity = records;
+	}
+
+	/**
+	 * Indexed data of one baseline.
+	 */
+	public static final class Entry {
+		private final int width;
+		private final int height;
+		private final byte[] pixelHash;
+		private final long perceptualHash;
+
+		Entry(final int width, final int height, final byte[] pixelHash, final long perceptualHash) {
+			this.width = width;
+			this.height = height;
+			this.pixelHash = pixelHash;
+			this.perceptualHash = perceptualHash;
+		}
+
+		/**
+		 * @return width of cropped baseline.
+		 */
+		public int getWidth() {
+			return this.width;
+		}
+
+		/**
+		 * @return height of cropped baseline.
+		 */
+		public int getHeight() {
+			return this.height;
+		}
+
+		/**
+		 * @return dHash of cropped baseline.
+		 */
+		public long getPerceptualHash() {
+			return this.perceptualHash;
+		}
+
+		/**
+		 * Checks that picture has the same size and pixels as baseline.
+		 * @param image - picture to check.
+		 * @param hash - md5 of picture pixels from Pictures.hash.
+		 * @return true if pictures are equal.
+		 */
+		public boolean isSameAs(final BufferedImage image, final byte[] hash) {
+			return this.hasSizeOf(image) && Arrays.equals(this.pixelHash, hash);
+		}
+
+		/**
+		 * Checks that other picture has the same size and pixels.
+		 * @param other - entry of other picture.
+		 * @return true if pictures are equal.
+		 */
+		public boolean isSameAs(final Entry other) {
+			return this.width == other.width && this.height == other.height
+					&& Arrays.equals(this.pixelHash, other.pixelHash);
+		}
+
+		/**
+		 * @param image - picture to check.
+		 * @return true if picture has the same size as baseline.
+		 */
+		public boolean hasSizeOf(final BufferedImage image) {
+			return image.getWidth() == this.width && image.getHeight() == this.height;
+		}
+	}
+
+	/**
+	 * md5 of absolute path of baseline.
+	 */
+	private static final class Key {
+		private final long high;
+		private final long low;
+
+		private Key(final long high, final long low) {
+			this.high = high;
+			this.low = low;
+		}
+
+		private static Key of(final File file) {
+			try {
+				final ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("MD5")
+						.digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8)));
+				return new Key(digest.getLong(), digest.getLong());
+			} catch (final NoSuchAlgorithmException e) {
+				throw new IllegalStateException("MD5 is not supported by JVM.", e);
+			}
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Key && ((Key) obj).high == this.high && ((Key) obj).low == this.low;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.high ^ this.low);
+		}
+	}
+}
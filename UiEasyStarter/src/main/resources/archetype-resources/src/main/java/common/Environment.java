@@ -7,7 +7,10 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 import org.slf4j.Logger;
@@ -21,6 +24,9 @@ import org.slf4j.LoggerFactory;
 public final class Environment {
 
 	private static final int DEFAULT_TIMEOUT = 30;
+	private static final int DEFAULT_DRIVER_MAX_REUSE = 50;
+	private static final long DEFAULT_STREAMING_PIXELS = 4_000_000;
+	private static final long DEFAULT_STORE_SIZE = 512;
 	private static Logger log = LoggerFactory.getLogger(Environment.class);
 
 	/**
@@ -42,6 +48,51 @@ public final class Environment {
      */
 	public static final String SCREENSHOT_PATH;
 
+	/**
+	 * File with index of baseline pictures: their sizes, pixel and perceptual hashes.
+	 * By default baseline.idx in screenshot folder, without date.
+	 * Can be set by using -Dbaseline.index option
+	 */
+	public static final String BASELINE_INDEX;
+
+	/**
+	 * Folder of screenshots, that are named by hash of their pixels and shared between runs.
+	 * By default objects in screenshot folder, without date.
+	 * Can be set by using -Dscreenshot.store option
+	 */
+	public static final String SCREENSHOT_STORE;
+
+	/**
+	 * Max size of screenshot store in megabytes. The least recently used screenshots are removed.
+	 * Can be set by using -Dscreenshot.store.size option
+	 */
+	public static final long SCREENSHOT_STORE_SIZE;
+
+	/**
+	 * Pictures with more pixels are compared row by row without loading them to memory.
+	 * Can be set by using -Dpicture.streaming.pixels option
+	 */
+	public static final long PICTURE_STREAMING_PIXELS;
+
+	/**
+	 * Compression level (0-9, -1 is default) of PNG files, written by framework.
+	 * Can be set by using -Dpng.compression option
+	 */
+	public static final int PNG_COMPRESSION;
+
+	/**
+	 * What is captured by screenshot of failed test: full - whole picture, element - only element,
+	 * that was passed to ScreenshotCapture.focus, thumbnail - whole picture and its downscaled copy in report.
+	 * Can be set by using -Dscreenshot.mode option
+	 */
+	public static final String SCREENSHOT_MODE;
+
+	/**
+	 * Max width of screenshot thumbnail in pixels.
+	 * Can be set by using -Dscreenshot.thumbnail.width option
+	 */
+	public static final int SCREENSHOT_THUMBNAIL_WIDTH;
+
 	/**
      * Retrieves url to grid hub.
      * Can be set by using -Dgrid.hub option
@@ -54,6 +105,111 @@ public final class Environment {
 	 */
 	public static final URI SITE_TO_TEST;
 
+	/**
+	 * Amount of browser sessions, that are kept in pool for every browser configuration.
+	 * 0 means that pool is disabled and every test starts new browser.
+	 * Can be set by using -Ddriver.pool.size option
+	 */
+	public static final int DRIVER_POOL_SIZE;
+
+	/**
+	 * Flag means should tests, marked by execution.DomOnly, run in in-process HtmlUnit first.
+	 * Failed tests are re-run in real browser.
+	 * Can be set by using -Dfast.lane option
+	 */
+	public static final boolean FAST_LANE;
+
+	/**
+	 * Amount of in-process HtmlUnit sessions, kept in pool for fast lane.
+	 * Can be set by using -Dfast.lane.pool.size option
+	 */
+	public static final int FAST_LANE_POOL_SIZE;
+
+	/**
+	 * How many times pooled browser can be reused before restart.
+	 * Can be set by using -Ddriver.pool.max.reuse option
+	 */
+	public static final int DRIVER_MAX_REUSE;
+
+	/**
+	 * Allowed difference of every color channel (0-255), when pictures are compared.
+	 * Can be set by using -Dpicture.tolerance option
+	 */
+	public static final int PICTURE_TOLERANCE;
+
+	/**
+	 * Allowed percent of different pixels, when pictures are compared.
+	 * Can be set by using -Dpicture.max.diff option
+	 */
+	public static final double PICTURE_MAX_DIFF;
+
+	/**
+	 * Index of current shard from 0, when tests are split between JVMs.
+	 * Can be set by using -Dshard.index option
+	 */
+	public static final int SHARD_INDEX;
+
+	/**
+	 * Amount of JVM shards.
+	 * Can be set by using -Dshard.count option
+	 */
+	public static final int SHARD_COUNT;
+
+	/**
+	 * Amount of thread shards of every test in ShardedSuite.
+	 * Can be set by using -Dshard.threads option
+	 */
+	public static final int SHARD_THREADS;
+
+	/**
+	 * File with durations of test methods from previous runs. It isn't changed while shards run,
+	 * they save durations to their own files, which are merged by execution.MethodDurations main method.
+	 * By default test-output/durations.properties
+	 * Can be set by using -Dshard.durations option
+	 */
+	public static final String DURATIONS_FILE;
+
+	/**
+	 * Browsers for tests with data provider CommonTestCase.BROWSERS, separated by comma.
+	 * Every browser is NAME[:version[:platform]], e.g. CHROME,FIREFOX:45:LINUX,HTMLUNIT.
+	 * By default browser of test is used.
+	 * Can be set by using -Dbrowser.matrix option
+	 */
+	public static final List<String> BROWSER_MATRIX;
+
+	/**
+	 * Flag means should browser connect through local proxy, that measures and blocks requests.
+	 * Can be set by using -Dnetwork.proxy option
+	 */
+	public static final boolean NETWORK_PROXY;
+
+	/**
+	 * Patterns of urls, that are not loaded by browser, separated by comma. Symbol * matches any text,
+	 * e.g. *google-analytics.com*,*.doubleclick.net. It works only with -Dnetwork.proxy.
+	 * Can be set by using -Dnetwork.block option
+	 */
+	public static final List<String> NETWORK_BLOCK;
+
+	/**
+	 * Flag means should html report be written while tests are running, instead of ReportNG report after suite.
+	 * Can be set by using -Dreport.streaming option
+	 */
+	public static final boolean STREAMING_REPORT;
+
+	/**
+	 * Flag means should we measure latency of WebDriver commands or not.
+	 * Report is written to latency.html and latency.json near ReportNG report.
+	 * Can be set by using -Ddriver.metrics option
+	 */
+	public static final boolean DRIVER_METRICS;
+
+	/**
+	 * How long found element of page object is reused without new search, in milliseconds.
+	 * 0 means that element is searched before every access, as PageFactory does it.
+	 * Can be set by using -Delement.cache.ttl option
+	 */
+	public static final long ELEMENT_CACHE_TTL;
+
 	static {
 		try {
 			SITE_TO_TEST = URI.create(System.getProperty("test.site"));
@@ -81,6 +237,52 @@ public final class Environment {
 				String.valueOf(DEFAULT_TIMEOUT)));
 		log.debug("Default timeout is " + TIMEOUT);
 
+		DRIVER_POOL_SIZE = Integer.valueOf(System.getProperty("driver.pool.size", "0"));
+		DRIVER_MAX_REUSE = Integer.valueOf(System.getProperty("driver.pool.max.reuse",
+				String.valueOf(DEFAULT_DRIVER_MAX_REUSE)));
+		FAST_LANE = Boolean.valueOf(System.getProperty("fast.lane", "false"));
+		FAST_LANE_POOL_SIZE = Integer.valueOf(System.getProperty("fast.lane.pool.size",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		if (FAST_LANE) {
+			log.debug("Fast lane is enabled, HtmlUnit pool size is " + FAST_LANE_POOL_SIZE);
+		}
+		if (DRIVER_POOL_SIZE > 0) {
+			log.debug("Driver pool size is " + DRIVER_POOL_SIZE + ", max reuse is " + DRIVER_MAX_REUSE);
+		}
+
+		PICTURE_TOLERANCE = Integer.valueOf(System.getProperty("picture.tolerance", "0"));
+		PICTURE_MAX_DIFF = Double.valueOf(System.getProperty("picture.max.diff", "0"));
+		PICTURE_STREAMING_PIXELS = Long.valueOf(System.getProperty("picture.streaming.pixels",
+				String.valueOf(DEFAULT_STREAMING_PIXELS)));
+		PNG_COMPRESSION = Integer.valueOf(System.getProperty("png.compression", "-1"));
+		SCREENSHOT_MODE = System.getProperty("screenshot.mode", "full").trim();
+		SCREENSHOT_THUMBNAIL_WIDTH = Integer.valueOf(System.getProperty("screenshot.thumbnail.width", "320"));
+
+		SHARD_INDEX = Integer.valueOf(System.getProperty("shard.index", "0"));
+		SHARD_COUNT = Integer.valueOf(System.getProperty("shard.count", "1"));
+		SHARD_THREADS = Integer.valueOf(System.getProperty("shard.threads", "1"));
+		DURATIONS_FILE = System.getProperty("shard.durations",
+				System.getProperty("user.dir") + "/test-output/durations.properties");
+		if (SHARD_INDEX < 0 || SHARD_INDEX >= SHARD_COUNT) {
+			throw new RuntimeException("Shard index " + SHARD_INDEX + " is out of shard count " + SHARD_COUNT);
+		}
+
+		final String matrix = System.getProperty("browser.matrix", "").trim();
+		BROWSER_MATRIX = matrix.isEmpty()
+				? Collections.<String>emptyList()
+				: Collections.unmodifiableList(Arrays.asList(matrix.split("${symbol_escape}${symbol_escape}s*,${symbol_escape}${symbol_escape}s*")));
+
+		NETWORK_PROXY = Boolean.valueOf(System.getProperty("network.proxy", "false"));
+		final String block = System.getProperty("network.block", "").trim();
+		NETWORK_BLOCK = block.isEmpty()
+				? Collections.<String>emptyList()
+				: Collections.unmodifiableList(Arrays.asList(block.split("${symbol_escape}${symbol_escape}s*,${symbol_escape}${symbol_escape}s*")));
+
+		STREAMING_REPORT = Boolean.valueOf(System.getProperty("report.streaming", "false"));
+
+		DRIVER_METRICS = Boolean.valueOf(System.getProperty("driver.metrics", "false"));
+		ELEMENT_CACHE_TTL = Long.valueOf(System.getProperty("element.cache.ttl", "0"));
+
 		MAKE_SCREENSHOT = Boolean.valueOf(System.getProperty("make.screenshot", "true"));
 
 		final SimpleDateFormat dateFormatter = new SimpleDateFormat("dd.MM.yyyy");
@@ -88,6 +290,12 @@ public final class Environment {
 
 		SCREENSHOT_PATH = System.getProperty("screenshot.path",
 				System.getProperty("user.dir") + "/test-output/html/scr/" + date);
+		final String screenshotRoot = System.getProperty("screenshot.path",
+				System.getProperty("user.dir") + "/test-output/html/scr");
+		BASELINE_INDEX = System.getProperty("baseline.index", screenshotRoot + "/baseline.idx");
+		SCREENSHOT_STORE = System.getProperty("screenshot.store", screenshotRoot + "/objects");
+		SCREENSHOT_STORE_SIZE = Long.valueOf(System.getProperty("screenshot.store.size",
+				String.valueOf(DEFAULT_STORE_SIZE)));
 
 		System.setProperty("org.uncommons.reportng.escape-output", "false");
 		System.setProperty("org.uncommons.reportng.stylesheet","src/main/resources/report.css");
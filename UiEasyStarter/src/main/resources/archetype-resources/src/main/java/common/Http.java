@@ -0,0 +1,220 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * HTTP client for backend checks and test data setup.
+ * Connections are kept alive and pooled per host, so repeated calls don't pay for TCP and TLS setup.
+ * Timeouts are taken from -Dtimeout option.
+ * @author gsikorskiy
+ *
+ */
+public final class Http {
+
+	private static final int MAX_CONNECTIONS = 100;
+	private static final int MAX_CONNECTIONS_PER_HOST = 20;
+	private static final int IDLE_SECONDS = 30;
+	private static final int INITIAL_BUFFER = 8 * 1024;
+
+	private static final CloseableHttpClient CLIENT;
+	private static final ExecutorService EXECUTOR;
+
+	static {
+		final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+		connections.setMaxTotal(MAX_CONNECTIONS);
+		connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+		final int timeout = (int) TimeUnit.SECONDS.toMillis(Environment.TIMEOUT);
+		CLIENT = HttpClients.custom()
+				.setConnectionManager(connections)
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectTimeout(timeout)
+						.setSocketTimeout(timeout)
+						.setConnectionRequestTimeout(timeout)
+						.build())
+				.evictIdleConnections(IDLE_SECONDS, TimeUnit.SECONDS)
+				.build();
+		final AtomicInteger threads = new AtomicInteger();
+		EXECUTOR = Executors.newFixedThreadPool(MAX_CONNECTIONS_PER_HOST, r -> {
+			final Thread thread = new Thread(r, "http-client-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private Http() { }
+
+	/**
+	 * Sends GET request.
+	 * @param url - address.
+	 * @return response with any status.
+	 * @throws IOException - if request fails.
+	 */
+	public static Response get(final String url) throws IOException {
+		return execute(new HttpGet(url));
+	}
+
+	/**
+	 * Sends POST request.
+	 * @param url - address.
+	 * @param body - request body.
+	 * @param contentType - type of body, e.g. application/json.
+	 * @return response with any status.
+	 * @throws IOException - if request fails.
+	 */
+	public static Response post(final String url, final String body, final String contentType) throws IOException {
+		final HttpPost post = new HttpPost(url);
+		post.setEntity(new StringEntity(body, ContentType.create(contentType, StandardCharsets.UTF_8)));
+		return execute(post);
+	}
+
+	/**
+	 * Sends request and reads the whole response body.
+	 * @param request - request to send.
+	 * @return response with any status.
+	 * @throws IOException - if request fails.
+	 */
+	public static Response execute(final HttpUriRequest request) throws IOException {
+		try (CloseableHttpResponse response = CLIENT.execute(request)) {
+			final HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				return new Response(response.getStatusLine().getStatusCode(),
+						ByteBuffer.allocate(0), StandardCharsets.UTF_8);
+			}
+			final ContentType type = ContentType.getOrDefault(entity);
+			final Charset charset = type.getCharset() != null ? type.getCharset() : StandardCharsets.UTF_8;
+			try (InputStream content = entity.getContent()) {
+				return new Response(response.getStatusLine().getStatusCode(),
+						read(content, entity.getContentLength()), charset);
+			}
+		}
+	}
+
+	/**
+	 * Sends GET request in background.
+	 * @param url - address.
+	 * @return future response.
+	 */
+	public static CompletableFuture<Response> getAsync(final String url) {
+		return executeAsync(new HttpGet(url));
+	}
+
+	/**
+	 * Sends request in background.
+	 * @param request - request to send.
+	 * @return future response, it fails with UncheckedIOException.
+	 */
+	public static CompletableFuture<Response> executeAsync(final HttpUriRequest request) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return execute(request);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, EXECUTOR);
+	}
+
+	/**
+	 * Sends GET requests in parallel.
+	 * @param urls - addresses.
+	 * @return future responses in the same order as urls.
+	 */
+	public static CompletableFuture<List<Response>> getAll(final Collection<String> urls) {
+		final List<CompletableFuture<Response>> futures = urls.stream()
+				.map(Http::getAsync)
+				.collect(Collectors.toList());
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(done -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Reads stream into single buffer. If length is known, body is read without any copying.
+	 */
+	private static ByteBuffer read(final InputStream content, final long length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length >= 0 ? (int) length : INITIAL_BUFFER);
+		final ReadableByteChannel channel = Channels.newChannel(content);
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				if (length >= 0) {
+					break;
+				}
+				final ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Status and body of response.
+	 */
+	public static final class Response {
+		private final int status;
+		private final ByteBuffer body;
+		private final Charset charset;
+
+		private Response(final int status, final ByteBuffer body, final Charset charset) {
+			this.status = status;
+			this.body = body.asReadOnlyBuffer();
+			this.charset = charset;
+		}
+
+		/**
+		 * @return HTTP status code.
+		 */
+		public int getStatus() {
+			return this.status;
+		}
+
+		/**
+		 * @return read-only view of body.
+		 */
+		public ByteBuffer getBody() {
+			return this.body.duplicate();
+		}
+
+		/**
+		 * @return body decoded with charset of response, UTF-8 by default.
+		 */
+		public String getText() {
+			return this.charset.decode(this.getBody()).toString();
+		}
+
+		@Override
+		public String toString() {
+			return "Response [status=" + this.status + ", " + this.body.remaining() + " bytes]";
+		}
+	}
+}
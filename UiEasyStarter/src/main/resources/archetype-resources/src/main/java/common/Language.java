@@ -6,6 +6,10 @@ package common;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Optional;
 
 import com.optimaize.langdetect.LanguageDetector;
 import com.optimaize.langdetect.LanguageDetectorBuilder;
@@ -14,7 +18,6 @@ import com.optimaize.langdetect.ngram.NgramExtractor;
 import com.optimaize.langdetect.profiles.LanguageProfile;
 import com.optimaize.langdetect.profiles.LanguageProfileReader;
 import com.optimaize.langdetect.text.CommonTextObjectFactories;
-import com.optimaize.langdetect.text.TextObject;
 import com.optimaize.langdetect.text.TextObjectFactory;
 
 /**
@@ -65,24 +68,41 @@ public enum Language {
 	 * @return true if text is recognized.
 	 */
 	public boolean verify(final String text) {
-		final List<LanguageProfile> profiles = new ArrayList<>();
-		for (final Language item : Language.values()) {
-			profiles.add(item.getProfile());
-		}
-
-		final LanguageDetector languageDetector = LanguageDetectorBuilder
-				.create(NgramExtractor.gramLength(2))
-				.withProfiles(profiles)
-				.build();
+		final Optional<LdLocale> lang = Detector.INSTANCE.detect(Detector.TEXT_FACTORY.forText(text));
+		return lang.isPresent() && this.toString().equals(lang.get().getLanguage());
+	}
 
-		final TextObjectFactory textObjectFactory = CommonTextObjectFactories.forDetectingOnLargeText();
-		final TextObject textObject = textObjectFactory.forText(text);
-		final String lang = languageDetector.detect(textObject).get().getLanguage();
-		return this.toString().equals(lang);
+	/**
+	 * Checks many texts at once. Texts are analyzed in parallel.
+	 * @param texts - texts with languages they should belong to.
+	 * @return texts with results of verification.
+	 */
+	public static Map<String, Boolean> verifyAll(final Map<String, Language> texts) {
+		return texts.entrySet().parallelStream().collect(Collectors.toMap(
+				Map.Entry::getKey, entry -> entry.getValue().verify(entry.getKey())));
 	}
 
 	@Override
 	public String toString() {
 		return this.name().toLowerCase();
 	}
+
+	/**
+	 * Detector is built once per JVM on the first verification.
+	 */
+	private static final class Detector {
+		private static final LanguageDetector INSTANCE = build();
+		private static final TextObjectFactory TEXT_FACTORY = CommonTextObjectFactories.forDetectingOnLargeText();
+
+		private static LanguageDetector build() {
+			final List<LanguageProfile> profiles = new ArrayList<>();
+			for (final Language item : Language.values()) {
+				profiles.add(item.getProfile());
+			}
+			return LanguageDetectorBuilder
+					.create(NgramExtractor.gramLength(2))
+					.withProfiles(profiles)
+					.build();
+		}
+	}
 }
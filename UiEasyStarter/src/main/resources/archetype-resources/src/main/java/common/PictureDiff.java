@@ -0,0 +1,95 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of pictures comparison: how many pixels differ and where.
+ * @author gsikorskiy
+ *
+ */
+public final class PictureDiff {
+
+	private static final double PERCENT = 100.0;
+
+	private final int width;
+	private final int height;
+	private final long differentPixels;
+	private final List<Rectangle> regions;
+
+	/**
+	 * Creates comparison result.
+	 * @param width - width of compared area.
+	 * @param height - height of compared area.
+	 * @param differentPixels - amount of pixels, that differ more than tolerance.
+	 * @param regions - bounding boxes of changed regions.
+	 */
+	public PictureDiff(final int width, final int height, final long differentPixels,
+			final List<Rectangle> regions) {
+		this.width = width;
+		this.height = height;
+		this.differentPixels = differentPixels;
+		this.regions = Collections.unmodifiableList(regions);
+	}
+
+	/**
+	 * Result for pictures without differences.
+	 * @param width - width of pictures.
+	 * @param height - height of pictures.
+	 * @return empty diff.
+	 */
+	public static PictureDiff none(final int width, final int height) {
+		return new PictureDiff(width, height, 0, Collections.<Rectangle>emptyList());
+	}
+
+	/**
+	 * @return amount of different pixels.
+	 */
+	public long getDifferentPixels() {
+		return this.differentPixels;
+	}
+
+	/**
+	 * @return part of different pixels from 0 to 1.
+	 */
+	public double getDiffRatio() {
+		final long total = (long) this.width * this.height;
+		return total == 0 ? 0 : (double) this.differentPixels / total;
+	}
+
+	/**
+	 * @return part of different pixels in percents.
+	 */
+	public double getDiffPercent() {
+		return this.getDiffRatio() * PERCENT;
+	}
+
+	/**
+	 * @return bounding boxes of changed regions.
+	 */
+	public List<Rectangle> getRegions() {
+		return this.regions;
+	}
+
+	/**
+	 * @return true if there are no different pixels.
+	 */
+	public boolean isEmpty() {
+		return this.differentPixels == 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder();
+		result.append(String.format("%d pixels (%.3f%%) differ", this.differentPixels, this.getDiffPercent()));
+		for (final Rectangle region : this.regions) {
+			result.append(String.format(", [x=%d y=%d w=%d h=%d]",
+					region.x, region.y, region.width, region.height));
+		}
+		return result.toString();
+	}
+}
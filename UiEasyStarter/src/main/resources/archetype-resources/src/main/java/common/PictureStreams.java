@@ -0,0 +1,214 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Crops, hashes and compares picture files row by row.
+ * Memory usage depends on width of pictures, not on their height,
+ * so very long screenshots of full pages can be compared in parallel threads.
+ * Results are the same as for Assertion.crop, Pictures and Assertion.imageDiff.
+ * @author gsikorskiy
+ *
+ */
+public final class PictureStreams {
+
+	private static final int WHITE = -1;
+	private static final int RGB = 0x00FFFFFF;
+	private static final int OPAQUE = 0xFF000000;
+	private static final int TILE = 256;
+
+	private PictureStreams() { }
+
+	/**
+	 * Reads size of picture from its header.
+	 * @param file - picture file.
+	 * @return amount of pixels.
+	 * @throws IOException - if file can't be read.
+	 */
+	public static long pixels(final File file) throws IOException {
+		try (PngRowReader reader = PngRowReader.open(file)) {
+			return (long) reader.getWidth() * reader.getHeight();
+		}
+	}
+
+	/**
+	 * Finds area without white borders, same as Assertion.crop does.
+	 * @param file - picture file.
+	 * @return area to compare.
+	 * @throws IOException - if file can't be read.
+	 */
+	public static Rectangle cropBounds(final File file) throws IOException {
+		try (PngRowReader reader = PngRowReader.open(file)) {
+			final int width = reader.getWidth();
+			final int height = reader.getHeight();
+			int minW = width;
+			int maxW = 0;
+			int minH = height;
+			int maxH = 0;
+			final int[] row = new int[width];
+			for (int j = 0; j < height; j++) {
+				reader.readRow(row);
+				int first = 0;
+				while (first < width && row[first] == WHITE) {
+					first++;
+				}
+				if (first == width) {
+					continue;
+				}
+				int last = width - 1;
+				while (row[last] == WHITE) {
+					last--;
+				}
+				minW = Math.min(minW, first);
+				maxW = Math.max(maxW, last);
+				minH = Math.min(minH, j);
+				maxH = j;
+			}
+			if (maxW <= minW || maxH <= minH) {
+				throw new IOException("Picture " + file + " is blank.");
+			}
+			return new Rectangle(minW, minH, maxW - minW, maxH - minH);
+		}
+	}
+
+	/**
+	 * Calculates hashes of cropped area of picture, same as Pictures.hash and Pictures.perceptualHash.
+	 * @param file - picture file.
+	 * @param area - cropped area.
+	 * @return size and hashes of area.
+	 * @throws IOException - if file can't be read.
+	 */
+	public static BaselineIndex.Entry fingerprint(final File file, final Rectangle area) throws IOException {
+		final Pictures.Fingerprint fingerprint = new Pictures.Fingerprint(area.width, area.height);
+		try (PngRowReader reader = PngRowReader.open(file)) {
+			final int[] row = new int[reader.getWidth()];
+			final int[] cropped = new int[area.width];
+			reader.skipRows(area.y);
+			for (int j = 0; j < area.height; j++) {
+				reader.readRow(row);
+				crop(row, area.x, area.width, cropped);
+				fingerprint.add(cropped);
+			}
+		}
+		return new BaselineIndex.Entry(area.width, area.height,
+				fingerprint.getMd5(), fingerprint.getPerceptualHash());
+	}
+
+	/**
+	 * Calculates md5 of encoded picture pixels, same as Pictures.hashHex for decoded picture.
+	 * @param picture - bytes of picture file.
+	 * @return md5 in hex.
+	 * @throws IOException - if picture can't be decoded.
+	 */
+	public static String hashHex(final byte[] picture) throws IOException {
+		try (PngRowReader reader = PngRowReader.open(picture)) {
+			final Pictures.Fingerprint fingerprint = new Pictures.Fingerprint(reader.getWidth(), reader.getHeight());
+			final int[] row = new int[reader.getWidth()];
+			for (int j = 0; j < reader.getHeight(); j++) {
+				reader.readRow(row);
+				fingerprint.add(row);
+			}
+			return Hex.encodeHexString(fingerprint.getMd5());
+		}
+	}
+
+	/**
+	 * Compares cropped areas of pictures with the same size and writes diff picture
+	 * like Assertion.imageDiff: differences on the left and expected picture on the right.
+	 * @param actual - actual picture.
+	 * @param actualArea - cropped area of actual picture.
+	 * @param expected - expected picture.
+	 * @param expectedArea - cropped area of expected picture.
+	 * @param tolerance - allowed difference of every color channel (0-255).
+	 * @param diffImage - file to write diff picture, or null if it isn't needed.
+	 * @return found differences.
+	 * @throws IOException - if file can't be read or written.
+	 */
+	public static PictureDiff compare(final File actual, final Rectangle actualArea,
+			final File expected, final Rectangle expectedArea, final int tolerance,
+			final File diffImage) throws IOException {
+		if (actualArea.width != expectedArea.width || actualArea.height != expectedArea.height) {
+			throw new IllegalArgumentException("Areas have different sizes: " + actualArea + ", " + expectedArea);
+		}
+		final int width = actualArea.width;
+		final int height = actualArea.height;
+		final int columns = (width + TILE - 1) / TILE;
+		final int[] minX = new int[columns];
+		final int[] maxX = new int[columns];
+		final int[] minY = new int[columns];
+		final int[] maxY = new int[columns];
+		final List<Rectangle> regions = new ArrayList<>();
+		long different = 0;
+		try (PngRowReader reader1 = PngRowReader.open(actual);
+				PngRowReader reader2 = PngRowReader.open(expected);
+				PngStripWriter writer = diffImage == null ? null
+						: new PngStripWriter(diffImage, 2 * width, height, Environment.PNG_COMPRESSION)) {
+			final int[] full1 = new int[reader1.getWidth()];
+			final int[] full2 = new int[reader2.getWidth()];
+			final int[] row1 = new int[width];
+			final int[] row2 = new int[width];
+			final int[] out = new int[2 * width];
+			reader1.skipRows(actualArea.y);
+			reader2.skipRows(expectedArea.y);
+			for (int j = 0; j < height; j++) {
+				if (j % TILE == 0) {
+					resetTiles(minX, maxX, minY, maxY);
+				}
+				reader1.readRow(full1);
+				reader2.readRow(full2);
+				crop(full1, actualArea.x, width, row1);
+				crop(full2, expectedArea.x, width, row2);
+				for (int i = 0; i < width; i++) {
+					final int rgb1 = row1[i];
+					final int rgb2 = row2[i];
+					if (Pictures.differs(rgb1, rgb2, tolerance)) {
+						different++;
+						final int tile = i / TILE;
+						minX[tile] = Math.min(minX[tile], i);
+						maxX[tile] = Math.max(maxX[tile], i);
+						minY[tile] = Math.min(minY[tile], j);
+						maxY[tile] = j;
+					}
+					out[i] = rgb1 == rgb2 ? rgb1 & RGB : ((rgb2 - rgb1) ^ RGB) & RGB;
+					out[width + i] = rgb2 & RGB;
+				}
+				if (writer != null) {
+					writer.writeRow(out);
+				}
+				if (j % TILE == TILE - 1 || j == height - 1) {
+					for (int tile = 0; tile < columns; tile++) {
+						if (maxX[tile] >= 0) {
+							regions.add(new Rectangle(minX[tile], minY[tile],
+									maxX[tile] - minX[tile] + 1, maxY[tile] - minY[tile] + 1));
+						}
+					}
+				}
+			}
+		}
+		return new PictureDiff(width, height, different, Pictures.mergeRegions(regions));
+	}
+
+	private static void crop(final int[] row, final int x, final int width, final int[] cropped) {
+		for (int i = 0; i < width; i++) {
+			cropped[i] = row[x + i] | OPAQUE;
+		}
+	}
+
+	private static void resetTiles(final int[] minX, final int[] maxX, final int[] minY, final int[] maxY) {
+		for (int tile = 0; tile < minX.length; tile++) {
+			minX[tile] = Integer.MAX_VALUE;
+			maxX[tile] = -1;
+			minY[tile] = Integer.MAX_VALUE;
+			maxY[tile] = -1;
+		}
+	}
+}
@@ -0,0 +1,413 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Low level helpers to work with pixels of images.
+ * Pixels are read directly from backing arrays of common image types,
+ * other types are read by rows with getRGB.
+ * @author gsikorskiy
+ *
+ */
+public final class Pictures {
+
+	private static final int OPAQUE = 0xFF000000;
+	private static final int BYTE = 0xFF;
+	private static final int TILE = 256;
+	private static final int HASH_COLUMNS = 9;
+	private static final int HASH_ROWS = 8;
+
+	private Pictures() { }
+
+	/**
+	 * Reads part of image row as ARGB pixels, same as BufferedImage.getRGB returns.
+	 * @param image - image to read.
+	 * @param x - first column.
+	 * @param y - row.
+	 * @param width - amount of pixels to read.
+	 * @param row - destination, should contain at least width elements.
+	 */
+	public static void readRow(final BufferedImage image, final int x, final int y,
+			final int width, final int[] row) {
+		final WritableRaster raster = image.getRaster();
+		if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+			image.getRGB(x, y, width, 1, row, 0, width);
+			return;
+		}
+		final DataBuffer buffer = raster.getDataBuffer();
+		final int type = image.getType();
+		if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+				&& buffer instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+			final SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+			final int offset = buffer.getOffset() + y * model.getScanlineStride() + x;
+			System.arraycopy(((DataBufferInt) buffer).getData(), offset, row, 0, width);
+			if (type == BufferedImage.TYPE_INT_RGB) {
+				for (int i = 0; i < width; i++) {
+					row[i] |= OPAQUE;
+				}
+			}
+		} else if (isByteRgb(image.getColorModel(), raster)) {
+			readByteRow(raster, x, y, width, row);
+		} else {
+			image.getRGB(x, y, width, 1, row, 0, width);
+		}
+	}
+
+	/**
+	 * Compares pixels of images. Stops on the first differing row.
+	 * @param image1 - first image.
+	 * @param image2 - second image.
+	 * @return true if images have same size and pixels.
+	 */
+	public static boolean equal(final BufferedImage image1, final BufferedImage image2) {
+		final int width = image1.getWidth();
+		final int height = image1.getHeight();
+		if (width != image2.getWidth() || height != image2.getHeight()) {
+			return false;
+		}
+		final int[] row1 = new int[width];
+		final int[] row2 = new int[width];
+		for (int j = 0; j < height; j++) {
+			readRow(image1, 0, j, width, row1);
+			readRow(image2, 0, j, width, row2);
+			for (int i = 0; i < width; i++) {
+				if (row1[i] != row2[i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares pictures tile by tile in common ForkJoinPool.
+	 * Pixel differs if any of its channels differs more than tolerance.
+	 * Pictures with different sizes are treated as completely different.
+	 * @param actual - actual picture.
+	 * @param expected - expected picture.
+	 * @param tolerance - allowed difference of every channel from 0 to 255.
+	 * @return amount of different pixels and changed regions.
+	 */
+	public static PictureDiff compare(final BufferedImage actual, final BufferedImage expected,
+			final int tolerance) {
+		final int width = actual.getWidth();
+		final int height = actual.getHeight();
+		if (width != expected.getWidth() || height != expected.getHeight()) {
+			final int maxWidth = Math.max(width, expected.getWidth());
+			final int maxHeight = Math.max(height, expected.getHeight());
+			return new PictureDiff(maxWidth, maxHeight, (long) maxWidth * maxHeight,
+					Collections.singletonList(new Rectangle(0, 0, maxWidth, maxHeight)));
+		}
+		final int columns = (width + TILE - 1) / TILE;
+		final int rows = (height + TILE - 1) / TILE;
+		final TileResult result = new TileTask(actual, expected, tolerance, columns, 0, columns * rows).invoke();
+		return new PictureDiff(width, height, result.pixels, mergeRegions(result.regions));
+	}
+
+	/**
+	 * Calculates md5 of image size and ARGB pixels.
+	 * It doesn't depend on the way image was encoded.
+	 * @param image - image to hash.
+	 * @return md5 digest.
+	 */
+	public static byte[] hash(final BufferedImage image) {
+		return fingerprint(image).getMd5();
+	}
+
+	/**
+	 * Same as hash, but in hex format.
+	 * @param image - image to hash.
+	 * @return md5 in hex.
+	 */
+	public static String hashHex(final BufferedImage image) {
+		return Hex.encodeHexString(hash(image));
+	}
+
+	/**
+	 * Calculates difference hash (dHash) of image: image is reduced to 9x8 grayscale blocks
+	 * and every bit shows whether block is darker than its right neighbour.
+	 * Similar images have hashes with small hamming distance.
+	 * @param image - image to hash.
+	 * @return 64 bit perceptual hash.
+	 */
+	public static long perceptualHash(final BufferedImage image) {
+		return fingerprint(image).getPerceptualHash();
+	}
+
+	/**
+	 * Counts different bits of perceptual hashes.
+	 * @param hash1 - first hash.
+	 * @param hash2 - second hash.
+	 * @return hamming distance from 0 (same) to 64.
+	 */
+	public static int distance(final long hash1, final long hash2) {
+		return Long.bitCount(hash1 ^ hash2);
+	}
+
+	private static Fingerprint fingerprint(final BufferedImage image) {
+		final int width = image.getWidth();
+		final Fingerprint fingerprint = new Fingerprint(width, image.getHeight());
+		final int[] row = new int[width];
+		for (int j = 0; j < image.getHeight(); j++) {
+			readRow(image, 0, j, width, row);
+			fingerprint.add(row);
+		}
+		return fingerprint;
+	}
+
+	static boolean differs(final int pixel1, final int pixel2, final int tolerance) {
+		if (pixel1 == pixel2) {
+			return false;
+		}
+		for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+			if (Math.abs((pixel1 >>> shift & BYTE) - (pixel2 >>> shift & BYTE)) > tolerance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Joins regions, that touch or overlap each other.
+	 */
+	static List<Rectangle> mergeRegions(final List<Rectangle> regions) {
+		final List<Rectangle> merged = new ArrayList<>(regions);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < merged.size() && !changed; i++) {
+				final Rectangle grown = new Rectangle(merged.get(i));
+				grown.grow(1, 1);
+				for (int j = i + 1; j < merged.size(); j++) {
+					if (grown.intersects(merged.get(j))) {
+						merged.set(i, merged.get(i).union(merged.remove(j)));
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return merged;
+	}
+
+	private static boolean isByteRgb(final ColorModel model, final WritableRaster raster) {
+		return model instanceof ComponentColorModel
+				&& model.getColorSpace().getType() == ColorSpace.TYPE_RGB
+				&& model.getColorSpace().isCS_sRGB()
+				&& !model.isAlphaPremultiplied()
+				&& raster.getDataBuffer() instanceof DataBufferByte
+				&& raster.getDataBuffer().getNumBanks() == 1
+				&& raster.getSampleModel() instanceof ComponentSampleModel
+				&& (raster.getNumBands() == 3 || raster.getNumBands() == 4);
+	}
+
+	private static void readByteRow(final WritableRaster raster, final int x, final int y,
+			final int width, final int[] row) {
+		final ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+		final byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+		final int[] bands = model.getBandOffsets();
+		final int pixelStride = model.getPixelStride();
+		final boolean hasAlpha = raster.getNumBands() == 4;
+		int offset = raster.getDataBuffer().getOffset() + y * model.getScanlineStride() + x * pixelStride;
+		for (int i = 0; i < width; i++, offset += pixelStride) {
+			final int alpha = hasAlpha ? (data[offset + bands[3]] & BYTE) << 24 : OPAQUE;
+			row[i] = alpha
+					| (data[offset + bands[0]] & BYTE) << 16
+					| (data[offset + bands[1]] & BYTE) << 8
+					| (data[offset + bands[2]] & BYTE);
+		}
+	}
+
+	/**
+	 * Calculates md5 and dHash of image, that is passed row by row from top to bottom.
+	 */
+	static final class Fingerprint {
+		private final int width;
+		private final int height;
+		private final MessageDigest digest = md5();
+		private final ByteBuffer bytes;
+		private final IntBuffer ints;
+		private final long[] sums = new long[HASH_COLUMNS * HASH_ROWS];
+		private final long[] counts = new long[HASH_COLUMNS * HASH_ROWS];
+		private final int[] blocks;
+		private int rows;
+
+		/**
+		 * Starts hashing.
+		 * @param width - width of image.
+		 * @param height - height of image.
+		 */
+		Fingerprint(final int width, final int height) {
+			this.width = width;
+			this.height = height;
+			this.bytes = ByteBuffer.allocate(Integer.BYTES * Math.max(width, 2));
+			this.ints = this.bytes.asIntBuffer();
+			this.ints.put(width).put(height);
+			this.digest.update(this.bytes.array(), 0, 2 * Integer.BYTES);
+			this.blocks = new int[width];
+			for (int i = 0; i < width; i++) {
+				this.blocks[i] = (int) ((long) i * HASH_COLUMNS / width);
+			}
+		}
+
+		/**
+		 * Adds next row of image.
+		 * @param row - ARGB pixels, at least width elements.
+		 */
+		void add(final int[] row) {
+			this.ints.clear();
+			this.ints.put(row, 0, this.width);
+			this.digest.update(this.bytes.array(), 0, this.width * Integer.BYTES);
+			final int offset = (int) ((long) this.rows++ * HASH_ROWS / this.height) * HASH_COLUMNS;
+			for (int i = 0; i < this.width; i++) {
+				final int pixel = row[i];
+				this.sums[offset + this.blocks[i]] += 299 * (pixel >>> 16 & BYTE)
+						+ 587 * (pixel >>> 8 & BYTE) + 114 * (pixel & BYTE);
+				this.counts[offset + this.blocks[i]]++;
+			}
+		}
+
+		/**
+		 * @return md5 of size and pixels.
+		 */
+		byte[] getMd5() {
+			return this.digest.digest();
+		}
+
+		/**
+		 * @return dHash of added rows.
+		 */
+		long getPerceptualHash() {
+			long hash = 0;
+			for (int y = 0; y < HASH_ROWS; y++) {
+				for (int x = 0; x < HASH_COLUMNS - 1; x++) {
+					final int left = y * HASH_COLUMNS + x;
+					hash <<= 1;
+					if (this.sums[left] * this.counts[left + 1] < this.sums[left + 1] * this.counts[left]) {
+						hash |= 1;
+					}
+				}
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * Different pixels found in range of tiles.
+	 */
+	private static final class TileResult {
+		private long pixels;
+		private final List<Rectangle> regions = new ArrayList<>();
+
+		private TileResult add(final TileResult other) {
+			this.pixels += other.pixels;
+			this.regions.addAll(other.regions);
+			return this;
+		}
+	}
+
+	/**
+	 * Compares range of tiles. Range is split in halves until single tile is left.
+	 */
+	private static final class TileTask extends RecursiveTask<TileResult> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient BufferedImage actual;
+		private final transient BufferedImage expected;
+		private final int tolerance;
+		private final int columns;
+		private final int from;
+		private final int to;
+
+		private TileTask(final BufferedImage actual, final BufferedImage expected, final int tolerance,
+				final int columns, final int from, final int to) {
+			this.actual = actual;
+			this.expected = expected;
+			this.tolerance = tolerance;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected TileResult compute() {
+			if (this.to - this.from <= 1) {
+				return this.compareTile(this.from);
+			}
+			final int middle = (this.from + this.to) >>> 1;
+			final TileTask left = new TileTask(this.actual, this.expected, this.tolerance,
+					this.columns, this.from, middle);
+			left.fork();
+			final TileResult right = new TileTask(this.actual, this.expected, this.tolerance,
+					this.columns, middle, this.to).compute();
+			return left.join().add(right);
+		}
+
+		private TileResult compareTile(final int tile) {
+			final TileResult result = new TileResult();
+			if (tile >= this.to) {
+				return result;
+			}
+			final int x0 = (tile % this.columns) * TILE;
+			final int y0 = (tile / this.columns) * TILE;
+			final int width = Math.min(TILE, this.actual.getWidth() - x0);
+			final int height = Math.min(TILE, this.actual.getHeight() - y0);
+			final int[] row1 = new int[width];
+			final int[] row2 = new int[width];
+			int minX = width;
+			int maxX = -1;
+			int minY = height;
+			int maxY = -1;
+			for (int j = 0; j < height; j++) {
+				readRow(this.actual, x0, y0 + j, width, row1);
+				readRow(this.expected, x0, y0 + j, width, row2);
+				for (int i = 0; i < width; i++) {
+					if (differs(row1[i], row2[i], this.tolerance)) {
+						result.pixels++;
+						minX = Math.min(minX, i);
+						maxX = Math.max(maxX, i);
+						minY = Math.min(minY, j);
+						maxY = j;
+					}
+				}
+			}
+			if (result.pixels > 0) {
+				result.regions.add(new Rectangle(x0 + minX, y0 + minY, maxX - minX + 1, maxY - minY + 1));
+			}
+			return result;
+		}
+	}
+
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 is not supported by JVM.", e);
+		}
+	}
+}
@@ -0,0 +1,496 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads picture row by row from top to bottom, so only few rows are kept in memory.
+ * Non-interlaced 8 bit RGB, RGBA and palette PNG files, which are produced by browsers,
+ * are decoded directly. Other files are decoded by ImageReader into memory on the first read,
+ * because ImageReader decodes PNG from the beginning for every source region.
+ * Such picture is kept for the last files of current thread, so few passes over one file decode it once.
+ * Pixels are the same as BufferedImage.getRGB returns for picture, read by ImageIO.
+ * @author gsikorskiy
+ *
+ */
+public final class PngRowReader implements Closeable {
+
+	private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+	private static final int IHDR = 0x49484452;
+	private static final int PLTE = 0x504C5445;
+	private static final int TRNS = 0x74524E53;
+	private static final int IDAT = 0x49444154;
+	private static final int ICCP = 0x69434350;
+	private static final int RGB = 2;
+	private static final int PALETTE = 3;
+	private static final int RGBA = 6;
+	private static final int BYTE = 0xFF;
+	private static final int OPAQUE = 0xFF000000;
+	private static final int BUFFER = 1 << 16;
+
+	private final int width;
+	private final int height;
+	private final Rows rows;
+	private int next;
+
+	private PngRowReader(final int width, final int height, final Rows rows) {
+		this.width = width;
+		this.height = height;
+		this.rows = rows;
+	}
+
+	/**
+	 * Opens picture.
+	 * @param file - picture file.
+	 * @return reader positioned before the first row.
+	 * @throws IOException - if file can't be read.
+	 */
+	public static PngRowReader open(final File file) throws IOException {
+		final BufferedImage decoded = Decoded.get(file);
+		if (decoded != null) {
+			return new PngRowReader(decoded.getWidth(), decoded.getHeight(), new ImageRows(decoded));
+		}
+		return open(() -> new FileInputStream(file), file, file);
+	}
+
+	/**
+	 * Opens encoded picture, e.g. screenshot from driver.
+	 * @param picture - bytes of picture file.
+	 * @return reader positioned before the first row.
+	 * @throws IOException - if picture can't be decoded.
+	 */
+	public static PngRowReader open(final byte[] picture) throws IOException {
+		return open(() -> new ByteArrayInputStream(picture), "picture of " + picture.length + " bytes", null);
+	}
+
+	private static PngRowReader open(final Source source, final Object name, final File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(source.open(), BUFFER));
+		try {
+			final PngRowReader direct = openDirect(in);
+			if (direct != null) {
+				return direct;
+			}
+		} catch (final IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+		in.close();
+		return openImage(source.open(), name, file);
+	}
+
+	/**
+	 * @return width of picture.
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * @return height of picture.
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Reads next row.
+	 * @param row - destination for ARGB pixels, at least width elements.
+	 * @throws IOException - if file is broken or all rows are read.
+	 */
+	public void readRow(final int[] row) throws IOException {
+		if (this.next >= this.height) {
+			throw new EOFException("All " + this.height + " rows are read.");
+		}
+		this.rows.read(this.next++, row);
+	}
+
+	/**
+	 * Skips rows.
+	 * @param count - amount of rows to skip.
+	 * @throws IOException - if file is broken or all rows are read.
+	 */
+	public void skipRows(final int count) throws IOException {
+		final int[] row = new int[this.width];
+		for (int i = 0; i < count; i++) {
+			this.readRow(row);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.rows.close();
+	}
+
+	/**
+	 * Parses header and returns reader, if picture can be decoded directly.
+	 */
+	private static PngRowReader openDirect(final DataInputStream in) throws IOException {
+		if (in.readLong() != SIGNATURE || in.readInt() != 13 || in.readInt() != IHDR) {
+			return null;
+		}
+		final int width = in.readInt();
+		final int height = in.readInt();
+		final int depth = in.readUnsignedByte();
+		final int colorType = in.readUnsignedByte();
+		skipFully(in, 2);
+		final int interlace = in.readUnsignedByte();
+		skipFully(in, 4);
+		final boolean supported = interlace == 0 && (colorType == PALETTE
+				? depth == 1 || depth == 2 || depth == 4 || depth == 8
+				: (colorType == RGB || colorType == RGBA) && depth == 8);
+		if (!supported) {
+			return null;
+		}
+		int[] palette = new int[0];
+		while (true) {
+			final int length = in.readInt();
+			final int type = in.readInt();
+			if (type == IDAT) {
+				return new PngRowReader(width, height,
+						new DirectRows(in, length, width, depth, colorType, palette));
+			} else if (type == ICCP) {
+				return null;
+			} else if (type == PLTE) {
+				palette = new int[length / 3];
+				for (int i = 0; i < palette.length; i++) {
+					palette[i] = OPAQUE | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+				}
+				skipFully(in, length - 3 * palette.length);
+			} else if (type == TRNS && colorType == PALETTE) {
+				for (int i = 0; i < length; i++) {
+					final int alpha = in.readUnsignedByte();
+					if (i < palette.length) {
+						palette[i] = alpha << 24 | palette[i] & ~OPAQUE;
+					}
+				}
+			} else {
+				skipFully(in, length);
+			}
+			skipFully(in, 4);
+		}
+	}
+
+	private static PngRowReader openImage(final InputStream in, final Object name, final File file)
+			throws IOException {
+		final ImageInputStream stream = ImageIO.createImageInputStream(in);
+		final Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+		if (readers == null || !readers.hasNext()) {
+			in.close();
+			if (stream != null) {
+				stream.close();
+			}
+			throw new IOException("Unsupported picture format: " + name);
+		}
+		final ImageReader reader = readers.next();
+		reader.setInput(stream, true, true);
+		return new PngRowReader(reader.getWidth(0), reader.getHeight(0), new ImageRows(reader, stream, in, file));
+	}
+
+	private static void skipFully(final InputStream in, final long count) throws IOException {
+		long left = count;
+		while (left > 0) {
+			final long skipped = in.skip(left);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			left -= skipped;
+		}
+	}
+
+	/**
+	 * Opens new stream with picture bytes.
+	 */
+	private interface Source {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * Source of rows.
+	 */
+	private interface Rows extends Closeable {
+		void read(int index, int[] row) throws IOException;
+	}
+
+	/**
+	 * Inflates IDAT chunks and reverses PNG filters for one row at a time.
+	 */
+	private static final class DirectRows implements Rows {
+		private final InputStream data;
+		private final Inflater inflater = new Inflater();
+		private final int width;
+		private final int depth;
+		private final int colorType;
+		private final int[] palette;
+		private final int bytesPerPixel;
+		private byte[] previous;
+		private byte[] current;
+
+		private DirectRows(final DataInputStream in, final int firstLength, final int width, final int depth,
+				final int colorType, final int[] palette) {
+			this.data = new InflaterInputStream(new IdatStream(in, firstLength), this.inflater, BUFFER);
+			this.width = width;
+			this.depth = depth;
+			this.colorType = colorType;
+			this.palette = palette;
+			final int channels = colorType == RGBA ? 4 : colorType == RGB ? 3 : 1;
+			this.bytesPerPixel = Math.max(1, channels * depth / Byte.SIZE);
+			final int stride = (int) (((long) width * channels * depth + Byte.SIZE - 1) / Byte.SIZE);
+			this.previous = new byte[stride];
+			this.current = new byte[stride];
+		}
+
+		@Override
+		public void read(final int index, final int[] row) throws IOException {
+			final int filter = this.data.read();
+			if (filter < 0) {
+				throw new EOFException("Picture data ends on row " + index);
+			}
+			int offset = 0;
+			while (offset < this.current.length) {
+				final int count = this.data.read(this.current, offset, this.current.length - offset);
+				if (count < 0) {
+					throw new EOFException("Picture data ends on row " + index);
+				}
+				offset += count;
+			}
+			this.unfilter(filter);
+			this.convert(row);
+			final byte[] swap = this.previous;
+			this.previous = this.current;
+			this.current = swap;
+		}
+
+		private void unfilter(final int filter) throws IOException {
+			final byte[] cur = this.current;
+			final byte[] prev = this.previous;
+			final int bpp = this.bytesPerPixel;
+			switch (filter) {
+			case 0:
+				break;
+			case 1:
+				for (int i = bpp; i < cur.length; i++) {
+					cur[i] += cur[i - bpp];
+				}
+				break;
+			case 2:
+				for (int i = 0; i < cur.length; i++) {
+					cur[i] += prev[i];
+				}
+				break;
+			case 3:
+				for (int i = 0; i < cur.length; i++) {
+					final int left = i >= bpp ? cur[i - bpp] & BYTE : 0;
+					cur[i] += (left + (prev[i] & BYTE)) >>> 1;
+				}
+				break;
+			case 4:
+				for (int i = 0; i < cur.length; i++) {
+					final int a = i >= bpp ? cur[i - bpp] & BYTE : 0;
+					final int b = prev[i] & BYTE;
+					final int c = i >= bpp ? prev[i - bpp] & BYTE : 0;
+					final int p = a + b - c;
+					final int pa = Math.abs(p - a);
+					final int pb = Math.abs(p - b);
+					final int pc = Math.abs(p - c);
+					cur[i] += pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+				}
+				break;
+			default:
+				throw new IOException("Unknown PNG filter " + filter);
+			}
+		}
+
+		private void convert(final int[] row) {
+			final byte[] cur = this.current;
+			if (this.colorType == RGB) {
+				for (int i = 0, k = 0; i < this.width; i++, k += 3) {
+					row[i] = OPAQUE | (cur[k] & BYTE) << 16 | (cur[k + 1] & BYTE) << 8 | (cur[k + 2] & BYTE);
+				}
+			} else if (this.colorType == RGBA) {
+				for (int i = 0, k = 0; i < this.width; i++, k += 4) {
+					row[i] = (cur[k + 3] & BYTE) << 24 | (cur[k] & BYTE) << 16
+							| (cur[k + 1] & BYTE) << 8 | (cur[k + 2] & BYTE);
+				}
+			} else {
+				final int perByte = Byte.SIZE / this.depth;
+				final int mask = (1 << this.depth) - 1;
+				for (int i = 0; i < this.width; i++) {
+					final int shift = Byte.SIZE - this.depth * (i % perByte + 1);
+					final int index = (cur[i / perByte] & BYTE) >>> shift & mask;
+					row[i] = index < this.palette.length ? this.palette[index] : OPAQUE;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.data.close();
+			this.inflater.end();
+		}
+	}
+
+	/**
+	 * Concatenates data of consecutive IDAT chunks.
+	 */
+	private static final class IdatStream extends InputStream {
+		private final DataInputStream in;
+		private int left;
+		private boolean finished;
+
+		private IdatStream(final DataInputStream in, final int firstLength) {
+			this.in = in;
+			this.left = firstLength;
+		}
+
+		private boolean nextChunk() throws IOException {
+			while (this.left == 0 && !this.finished) {
+				skipFully(this.in, 4);
+				this.left = this.in.readInt();
+				if (this.in.readInt() != IDAT) {
+					this.finished = true;
+					this.left = 0;
+				}
+			}
+			return !this.finished;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!this.nextChunk()) {
+				return -1;
+			}
+			this.left--;
+			return this.in.read();
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			if (!this.nextChunk()) {
+				return -1;
+			}
+			final int count = this.in.read(buffer, offset, Math.min(length, this.left));
+			if (count < 0) {
+				throw new EOFException("PNG file is truncated.");
+			}
+			this.left -= count;
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+
+	/**
+	 * Decodes whole picture by ImageReader on the first read, header is read only to get size.
+	 */
+	private static final class ImageRows implements Rows {
+		private final File file;
+		private ImageReader reader;
+		private ImageInputStream stream;
+		private InputStream in;
+		private BufferedImage image;
+
+		private ImageRows(final BufferedImage image) {
+			this.file = null;
+			this.image = image;
+		}
+
+		private ImageRows(final ImageReader reader, final ImageInputStream stream, final InputStream in,
+				final File file) {
+			this.file = file;
+			this.reader = reader;
+			this.stream = stream;
+			this.in = in;
+		}
+
+		@Override
+		public void read(final int index, final int[] row) throws IOException {
+			if (this.image == null) {
+				this.image = this.reader.read(0);
+				this.close();
+				if (this.file != null) {
+					Decoded.put(this.file, this.image);
+				}
+			}
+			Pictures.readRow(this.image, 0, index, this.image.getWidth(), row);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.reader != null) {
+				this.reader.dispose();
+				this.reader = null;
+				this.stream.close();
+				this.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Pictures, decoded by ImageReader, of the last files opened by current thread.
+	 * Crop, fingerprint and compare of the same file reuse picture, until file is changed
+	 * or memory is needed.
+	 */
+	private static final class Decoded {
+		private static final int FILES = 2;
+		private static final ThreadLocal<Map<File, Decoded>> LAST = ThreadLocal.withInitial(() ->
+				new LinkedHashMap<File, Decoded>(FILES * 2, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(final Map.Entry<File, Decoded> eldest) {
+						return size() > FILES;
+					}
+				});
+
+		private final long modified;
+		private final long length;
+		private final SoftReference<BufferedImage> image;
+
+		private Decoded(final File file, final BufferedImage image) {
+			this.modified = file.lastModified();
+			this.length = file.length();
+			this.image = new SoftReference<>(image);
+		}
+
+		private static BufferedImage get(final File file) {
+			final Decoded decoded = LAST.get().get(file.getAbsoluteFile());
+			if (decoded == null || decoded.modified != file.lastModified() || decoded.length != file.length()) {
+				return null;
+			}
+			return decoded.image.get();
+		}
+
+		private static void put(final File file, final BufferedImage image) {
+			LAST.get().put(file.getAbsoluteFile(), new Decoded(file, image));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PngRowReader [" + this.width + "x" + this.height + ", row " + this.next + "]";
+	}
+}
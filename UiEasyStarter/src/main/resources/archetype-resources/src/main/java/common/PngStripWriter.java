@@ -0,0 +1,181 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes RGB PNG row by row, so picture is never kept in memory completely.
+ * Rows are filtered with Sub filter and compressed to IDAT chunks while they come.
+ * @author gsikorskiy
+ *
+ */
+public final class PngStripWriter implements Closeable {
+
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final int IHDR = 0x49484452;
+	private static final int IDAT = 0x49444154;
+	private static final int IEND = 0x49454E44;
+	private static final int CHUNK = 1 << 16;
+	private static final int RGB = 2;
+	private static final int DEPTH = 8;
+	private static final int BYTES_PER_PIXEL = 3;
+	private static final int SUB_FILTER = 1;
+
+	private final DataOutputStream out;
+	private final Deflater deflater;
+	private final DeflaterOutputStream compressed;
+	private final ChunkBuffer chunk = new ChunkBuffer();
+	private final int width;
+	private final int height;
+	private final byte[] line;
+	private int rows;
+
+	/**
+	 * Creates file and writes header.
+	 * @param file - file to write.
+	 * @param width - width of picture.
+	 * @param height - height of picture.
+	 * @param level - compression level from 0 to 9 or -1 for default.
+	 * @throws IOException - if file can't be written.
+	 */
+	public PngStripWriter(final File file, final int width, final int height, final int level)
+			throws IOException {
+		this(new FileOutputStream(file), width, height, level);
+	}
+
+	/**
+	 * Writes header to stream.
+	 * @param stream - stream to write, it is closed with writer.
+	 * @param width - width of picture.
+	 * @param height - height of picture.
+	 * @param level - compression level from 0 to 9 or -1 for default.
+	 * @throws IOException - if stream can't be written.
+	 */
+	public PngStripWriter(final OutputStream stream, final int width, final int height, final int level)
+			throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(stream, CHUNK));
+		this.width = width;
+		this.height = height;
+		this.line = new byte[1 + width * BYTES_PER_PIXEL];
+		this.deflater = new Deflater(level);
+		this.compressed = new DeflaterOutputStream(this.chunk, this.deflater, CHUNK);
+		this.out.write(SIGNATURE);
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final DataOutputStream data = new DataOutputStream(header);
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeByte(DEPTH);
+		data.writeByte(RGB);
+		data.writeByte(0);
+		data.writeByte(0);
+		data.writeByte(0);
+		this.writeChunk(IHDR, header.toByteArray(), header.size());
+	}
+
+	/**
+	 * Writes next row. Alpha channel is ignored.
+	 * @param row - ARGB pixels, at least width elements.
+	 * @throws IOException - if file can't be written or all rows are written.
+	 */
+	public void writeRow(final int[] row) throws IOException {
+		if (this.rows == this.height) {
+			throw new IOException("All " + this.height + " rows are written.");
+		}
+		final byte[] bytes = this.line;
+		bytes[0] = SUB_FILTER;
+		int left = 0;
+		for (int i = 0, k = 1; i < this.width; i++, k += BYTES_PER_PIXEL) {
+			final int pixel = row[i];
+			bytes[k] = (byte) ((pixel >>> 16) - (left >>> 16));
+			bytes[k + 1] = (byte) ((pixel >>> 8) - (left >>> 8));
+			bytes[k + 2] = (byte) (pixel - left);
+			left = pixel;
+		}
+		this.compressed.write(bytes);
+		this.rows++;
+	}
+
+	/**
+	 * Finishes compression and writes the last chunks.
+	 * @throws IOException - if file can't be written or not all rows are written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.rows != this.height) {
+				throw new IOException("Only " + this.rows + " of " + this.height + " rows are written.");
+			}
+			this.compressed.finish();
+			this.chunk.flush();
+			this.writeChunk(IEND, new byte[0], 0);
+		} finally {
+			this.deflater.end();
+			this.out.close();
+		}
+	}
+
+	private void writeChunk(final int type, final byte[] data, final int length) throws IOException {
+		final CRC32 crc = new CRC32();
+		crc.update(type >>> 24);
+		crc.update(type >>> 16);
+		crc.update(type >>> 8);
+		crc.update(type);
+		crc.update(data, 0, length);
+		this.out.writeInt(length);
+		this.out.writeInt(type);
+		this.out.write(data, 0, length);
+		this.out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Collects compressed data and writes it as IDAT chunks of limited size.
+	 */
+	private final class ChunkBuffer extends OutputStream {
+		private final byte[] data = new byte[CHUNK];
+		private int size;
+
+		@Override
+		public void write(final int b) throws IOException {
+			this.data[this.size++] = (byte) b;
+			if (this.size == CHUNK) {
+				this.flush();
+			}
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			int from = offset;
+			int left = length;
+			while (left > 0) {
+				final int count = Math.min(left, CHUNK - this.size);
+				System.arraycopy(bytes, from, this.data, this.size, count);
+				this.size += count;
+				from += count;
+				left -= count;
+				if (this.size == CHUNK) {
+					this.flush();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (this.size > 0) {
+				writeChunk(IDAT, this.data, this.size);
+				this.size = 0;
+			}
+		}
+	}
+}
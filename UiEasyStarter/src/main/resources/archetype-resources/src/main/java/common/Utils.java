@@ -5,13 +5,12 @@ package common;
 
 import static reporting.CommonReporter.printInfo;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.Random;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Simple utils.
  * @author gsikorskiy
@@ -24,27 +23,27 @@ public final class Utils {
 	 */
 	public static final int MILLI = 1000;
 
+	private static final Logger log = LoggerFactory.getLogger(Utils.class);
+
 	private Utils() { }
 
 	/**
-	 *Simple CURL command.
+	 *Simple CURL command. Connections are reused, see Http.
 	 * @param url - url to process
-	 * @return response from server
+	 * @return response from server or empty string if request fails or status isn't 2xx
 	 */
 	public static String curl(final String url) {
-		final StringBuilder result = new StringBuilder();
-		try (BufferedReader reader = new BufferedReader(
-				new InputStreamReader(
-						new URL(url).openStream(), "UTF-8"))) {
-			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-		        result.append(line);
-		    }
-		} catch (final MalformedURLException e) {
-			e.printStackTrace();
-		} catch (final IOException e) {
-			e.printStackTrace();
+		try {
+			final Http.Response response = Http.get(url);
+			if (response.getStatus() / 100 != 2) {
+				log.error("Request to " + url + " failed with status " + response.getStatus() + ".");
+				return "";
+			}
+			return response.getText();
+		} catch (final IOException | IllegalArgumentException e) {
+			log.error("Request to " + url + " failed.", e);
+			return "";
 		}
-		return result.toString();
 	}
 
 	/**
@@ -0,0 +1,23 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package execution;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks test method or class, that checks only DOM and doesn't need real browser.
+ * With -Dfast.lane such tests run in pooled in-process HtmlUnit first,
+ * and only failed ones are re-run in browser of the test (see FastLane).
+ * @author gsikorskiy
+ *
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface DomOnly {
+}
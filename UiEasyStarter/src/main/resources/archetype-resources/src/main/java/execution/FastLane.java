@@ -0,0 +1,119 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package execution;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IAnnotationTransformer;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.IRetryAnalyzer;
+import org.testng.ITestResult;
+import org.testng.annotations.ITestAnnotation;
+
+import common.Environment;
+import reporting.ScreenshotCapture;
+import webdriver.Browser;
+import webdriver.BrowserName;
+import webdriver.WebDriverPool;
+import webdriver.WebDriverStorage;
+
+/**
+ * Tiered execution of tests, marked by DomOnly. Enabled by -Dfast.lane.
+ * Such test runs first in in-process HtmlUnit, taken from pool of -Dfast.lane.pool.size sessions.
+ * If it fails, screenshot of HtmlUnit is taken and it is promoted: TestNG re-runs it once in browser of the test.
+ * Tests with their own retry analyzer are run in browser of the test only.
+ * Browser of the test is started on first use, so it is not started at all when all tests pass in HtmlUnit.
+ * Register it in suite xml as listener.
+ * @author gsikorskiy
+ *
+ */
+public class FastLane implements IAnnotationTransformer, IInvokedMethodListener {
+
+	/**
+	 * Attribute of test result with lane, where it was run: "fast" or "promoted".
+	 */
+	public static final String LANE_ATTRIBUTE = "lane";
+
+	private static final String FAST = "fast";
+	private static final String PROMOTED = "promoted";
+	private static final Logger log = LoggerFactory.getLogger(FastLane.class);
+	private static final Browser IN_PROCESS = new Browser(BrowserName.HTMLUNIT);
+	private static final ThreadLocal<Boolean> PROMOTION = new ThreadLocal<>();
+
+	static {
+		IN_PROCESS.setVersion("in-process");
+		IN_PROCESS.setPlatform("JVM");
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void transform(final ITestAnnotation annotation, final Class testClass,
+			final Constructor testConstructor, final Method testMethod) {
+		if (Environment.FAST_LANE && testMethod != null && isDomOnly(testMethod)
+				&& annotation.getRetryAnalyzer() == null) {
+			annotation.setRetryAnalyzer(Promotion.class);
+		}
+	}
+
+	@Override
+	public void beforeInvocation(final IInvokedMethod method, final ITestResult result) {
+		if (!Environment.FAST_LANE || !method.isTestMethod()
+				|| !(method.getTestMethod().getRetryAnalyzer() instanceof Promotion)) {
+			return;
+		}
+		if (Boolean.TRUE.equals(PROMOTION.get())) {
+			PROMOTION.remove();
+			result.setAttribute(LANE_ATTRIBUTE, PROMOTED);
+			return;
+		}
+		WebDriverStorage.addDriver(IN_PROCESS,
+				WebDriverPool.leaseInProcess(IN_PROCESS, Environment.FAST_LANE_POOL_SIZE));
+		result.setAttribute(LANE_ATTRIBUTE, FAST);
+	}
+
+	@Override
+	public void afterInvocation(final IInvokedMethod method, final ITestResult result) {
+		if (FAST.equals(result.getAttribute(LANE_ATTRIBUTE)) && WebDriverStorage.getBrowser() == IN_PROCESS) {
+			// failure is reported as skipped retry, so screenshot listener isn't called for it
+			// and HtmlUnit must be captured before it is returned to pool
+			try {
+				if (!result.isSuccess() && Environment.MAKE_SCREENSHOT) {
+					final WebDriver driver = WebDriverStorage.peekDriver();
+					ScreenshotCapture.capture(driver, ScreenshotCapture.getFocus(),
+							"Screenshot for " + result.getName() + " in fast lane " + driver.getCurrentUrl());
+				}
+			} finally {
+				WebDriverStorage.removeDriver();
+			}
+		}
+	}
+
+	private static boolean isDomOnly(final Method method) {
+		return method != null && !method.isAnnotationPresent(NeedsRendering.class)
+				&& (method.isAnnotationPresent(DomOnly.class)
+						|| method.getDeclaringClass().isAnnotationPresent(DomOnly.class));
+	}
+
+	/**
+	 * Re-runs test, that failed in fast lane. TestNG retries test in the same thread,
+	 * so promotion is passed to the next invocation through thread local.
+	 */
+	public static class Promotion implements IRetryAnalyzer {
+
+		@Override
+		public boolean retry(final ITestResult result) {
+			if (!FAST.equals(result.getAttribute(LANE_ATTRIBUTE))) {
+				return false;
+			}
+			log.info("Test " + result.getName() + " failed in HtmlUnit, it is promoted to real browser.");
+			PROMOTION.set(Boolean.TRUE);
+			return true;
+		}
+	}
+}
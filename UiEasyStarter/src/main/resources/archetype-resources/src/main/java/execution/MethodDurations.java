@@ -0,0 +1,195 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package execution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestNGMethod;
+
+import common.Environment;
+
+/**
+ * Durations of test methods from previous runs.
+ * They are kept in properties file: full method name = milliseconds.
+ * The file isn't changed while shards run, so every shard JVM splits methods by the same durations.
+ * Each shard saves durations of its methods to its own file near it (durations.properties.shard0 etc.),
+ * these files are merged into the durations file by run without shards or by main method of this class,
+ * which is called after all shards are finished.
+ * @author gsikorskiy
+ *
+ */
+public final class MethodDurations {
+
+	private static final Logger log = LoggerFactory.getLogger(MethodDurations.class);
+	private static final String SHARD_SUFFIX = ".shard";
+
+	private final Path file;
+	private final Map<String, Long> known = new ConcurrentHashMap<>();
+	private final Map<String, Long> measured = new ConcurrentHashMap<>();
+
+	private MethodDurations(final Path file) {
+		this.file = file;
+		this.known.putAll(read(file));
+	}
+
+	/**
+	 * @return durations, loaded from -Dshard.durations file.
+	 */
+	public static MethodDurations getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Merges durations, saved by shards, into durations file.
+	 * Run it after all shard JVMs are finished.
+	 * @param args - path to durations file, -Dshard.durations is used if it isn't passed.
+	 */
+	public static void main(final String[] args) {
+		merge(Paths.get(args.length > 0 ? args[0] : Environment.DURATIONS_FILE), new Properties());
+	}
+
+	/**
+	 * Key of method in durations file.
+	 * @param method - test method.
+	 * @return full name of method.
+	 */
+	public static String key(final ITestNGMethod method) {
+		return method.getRealClass().getName() + "." + method.getMethodName();
+	}
+
+	/**
+	 * Retrieves duration of method from previous runs.
+	 * @param method - test method.
+	 * @return milliseconds or null if method was not run yet.
+	 */
+	public Long get(final ITestNGMethod method) {
+		return this.known.get(key(method));
+	}
+
+	/**
+	 * Average duration of known methods.
+	 * @return milliseconds, 1 if nothing is known.
+	 */
+	public long average() {
+		return (long) this.known.values().stream().mapToLong(Long::longValue).average().orElse(1);
+	}
+
+	/**
+	 * Remembers duration of method in current run. Several invocations are summed up.
+	 * @param method - test method.
+	 * @param millis - duration of invocation.
+	 */
+	public void record(final ITestNGMethod method, final long millis) {
+		this.measured.merge(key(method), millis, Long::sum);
+	}
+
+	/**
+	 * Saves durations of current run. Shard writes them to its own file, which is merged later,
+	 * run without shards merges them with durations of all shards into durations file at once.
+	 */
+	public synchronized void save() {
+		if (this.measured.isEmpty()) {
+			return;
+		}
+		final Properties current = new Properties();
+		this.measured.forEach((key, value) -> current.setProperty(key, String.valueOf(value)));
+		try {
+			if (Environment.SHARD_COUNT > 1) {
+				final Path shard = this.file.resolveSibling(this.file.getFileName() + SHARD_SUFFIX
+						+ Environment.SHARD_INDEX);
+				final Properties merged = new Properties();
+				read(shard).forEach((key, value) -> merged.setProperty(key, String.valueOf(value)));
+				merged.putAll(current);
+				write(shard, merged);
+			} else {
+				merge(this.file, current);
+			}
+			this.measured.clear();
+		} catch (final IOException e) {
+			log.error("Unable to save durations of test methods to " + this.file, e);
+		}
+	}
+
+	/**
+	 * Merges durations of shards and current ones into durations file and removes files of shards.
+	 * File is locked, so several JVMs without shards can save their durations.
+	 */
+	private static void merge(final Path file, final Properties current) {
+		final Path folder = file.toAbsolutePath().getParent();
+		final Path lock = file.resolveSibling(file.getFileName() + ".lock");
+		try {
+			Files.createDirectories(folder);
+			try (FileChannel channel = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock ignored = channel.lock();
+					DirectoryStream<Path> shards = Files.newDirectoryStream(folder,
+							file.getFileName() + SHARD_SUFFIX + "[0-9]*")) {
+				final Properties merged = new Properties();
+				read(file).forEach((key, value) -> merged.setProperty(key, String.valueOf(value)));
+				for (final Path shard : shards) {
+					if (shard.getFileName().toString().endsWith(".tmp")) {
+						continue;
+					}
+					read(shard).forEach((key, value) -> merged.setProperty(key, String.valueOf(value)));
+					Files.delete(shard);
+				}
+				merged.putAll(current);
+				write(file, merged);
+			}
+		} catch (final IOException e) {
+			log.error("Unable to merge durations of test methods to " + file, e);
+		}
+	}
+
+	private static void write(final Path file, final Properties durations) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			durations.store(out, "Durations of test methods in milliseconds");
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Map<String, Long> read(final Path file) {
+		final Map<String, Long> result = new ConcurrentHashMap<>();
+		if (!Files.exists(file)) {
+			return result;
+		}
+		final Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		} catch (final IOException e) {
+			log.error("Unable to read durations of test methods from " + file, e);
+		}
+		for (final String key : properties.stringPropertyNames()) {
+			try {
+				result.put(key, Long.valueOf(properties.getProperty(key)));
+			} catch (final NumberFormatException e) {
+				log.debug("Wrong duration of " + key + " is ignored.");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Loads durations on first use, so main method doesn't need them.
+	 */
+	private static final class Holder {
+		private static final MethodDurations INSTANCE = new MethodDurations(Paths.get(Environment.DURATIONS_FILE));
+	}
+}
@@ -0,0 +1,204 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package execution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.ITestContext;
+import org.testng.ITestListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+import common.Environment;
+
+/**
+ * Splits test methods into shards with equal total duration.
+ * Durations are taken from previous runs (see MethodDurations), methods are assigned
+ * longest first to the least loaded shard. Methods, linked by dependsOnMethods, are assigned together.
+ * Current JVM runs only methods of its shard,
+ * set by -Dshard.index and -Dshard.count. Tests, cloned by ShardedSuite, are split further:
+ * each of them runs in its own thread with its own driver. If there is only one shard, order of methods is kept.
+ * Register it in suite xml as listener.
+ * @author gsikorskiy
+ *
+ */
+public class ShardInterceptor implements IMethodInterceptor, ITestListener, ISuiteListener {
+
+	/**
+	 * Test parameter with index of thread shard.
+	 */
+	public static final String SHARD_THREAD = "ShardThread";
+
+	/**
+	 * Test parameter with amount of thread shards.
+	 */
+	public static final String SHARD_THREADS = "ShardThreads";
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Override
+	public List<IMethodInstance> intercept(final List<IMethodInstance> methods, final ITestContext context) {
+		final int threads = this.getIntParameter(context, SHARD_THREADS, 1);
+		final int count = Environment.SHARD_COUNT * threads;
+		final int index = Environment.SHARD_INDEX * threads + this.getIntParameter(context, SHARD_THREAD, 0);
+		if (count == 1) {
+			return methods;
+		}
+
+		final MethodDurations durations = MethodDurations.getInstance();
+		final long average = durations.average();
+		final List<Timed> sorted = new ArrayList<>();
+		for (final List<IMethodInstance> group : groupDependent(methods)) {
+			long millis = 0;
+			for (final IMethodInstance method : group) {
+				final Long known = durations.get(method.getMethod());
+				millis += known == null ? average : known;
+			}
+			sorted.add(new Timed(group, millis));
+		}
+		sorted.sort(Comparator.comparingLong((Timed t) -> -t.millis)
+				.thenComparing(t -> MethodDurations.key(t.methods.get(0).getMethod())));
+
+		final PriorityQueue<Shard> shards = new PriorityQueue<>(Comparator.comparingLong((Shard s) -> s.load)
+				.thenComparingInt(s -> s.index));
+		for (int i = 0; i < count; i++) {
+			shards.add(new Shard(i));
+		}
+		final List<IMethodInstance> result = new ArrayList<>();
+		long load = 0;
+		for (final Timed timed : sorted) {
+			final Shard shard = shards.poll();
+			shard.load += timed.millis;
+			if (shard.index == index) {
+				result.addAll(timed.methods);
+				load += timed.millis;
+			}
+			shards.add(shard);
+		}
+		this.log.debug("Shard " + (index + 1) + " of " + count + " of " + context.getName() + " runs "
+				+ result.size() + " of " + methods.size() + " methods, expected duration " + load + " ms.");
+		return result;
+	}
+
+	@Override
+	public void onTestSuccess(final ITestResult result) {
+		this.record(result);
+	}
+
+	@Override
+	public void onTestFailure(final ITestResult result) {
+		this.record(result);
+	}
+
+	@Override
+	public void onTestFailedButWithinSuccessPercentage(final ITestResult result) {
+		this.record(result);
+	}
+
+	@Override
+	public void onTestStart(final ITestResult result) {
+	}
+
+	@Override
+	public void onTestSkipped(final ITestResult result) {
+	}
+
+	@Override
+	public void onStart(final ITestContext context) {
+	}
+
+	@Override
+	public void onFinish(final ITestContext context) {
+	}
+
+	@Override
+	public void onStart(final ISuite suite) {
+	}
+
+	@Override
+	public void onFinish(final ISuite suite) {
+		MethodDurations.getInstance().save();
+	}
+
+	private void record(final ITestResult result) {
+		MethodDurations.getInstance().record(result.getMethod(), result.getEndMillis() - result.getStartMillis());
+	}
+
+	/**
+	 * Joins methods, that depend on each other, into groups. Methods keep their order inside of group.
+	 */
+	private static Collection<List<IMethodInstance>> groupDependent(final List<IMethodInstance> methods) {
+		final Map<String, String> parents = new HashMap<>();
+		for (final IMethodInstance method : methods) {
+			final String name = name(method.getMethod());
+			parents.putIfAbsent(name, name);
+			for (final String dependency : method.getMethod().getMethodsDependedUpon()) {
+				final String other = dependency.contains(".") ? dependency
+						: method.getMethod().getRealClass().getName() + "." + dependency;
+				parents.putIfAbsent(other, other);
+				parents.put(root(parents, name), root(parents, other));
+			}
+		}
+		final Map<String, List<IMethodInstance>> groups = new LinkedHashMap<>();
+		for (final IMethodInstance method : methods) {
+			groups.computeIfAbsent(root(parents, name(method.getMethod())), k -> new ArrayList<>()).add(method);
+		}
+		return groups.values();
+	}
+
+	private static String root(final Map<String, String> parents, final String name) {
+		String root = name;
+		while (!root.equals(parents.get(root))) {
+			root = parents.get(root);
+		}
+		return root;
+	}
+
+	private static String name(final ITestNGMethod method) {
+		return method.getRealClass().getName() + "." + method.getMethodName();
+	}
+
+	private int getIntParameter(final ITestContext context, final String name, final int defaultValue) {
+		final String value = context.getCurrentXmlTest().getParameter(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * Methods, that run in one shard, with expected duration.
+	 */
+	private static final class Timed {
+		private final List<IMethodInstance> methods;
+		private final long millis;
+
+		private Timed(final List<IMethodInstance> methods, final long millis) {
+			this.methods = methods;
+			this.millis = millis;
+		}
+	}
+
+	/**
+	 * Shard with total duration of assigned methods.
+	 */
+	private static final class Shard {
+		private final int index;
+		private long load;
+
+		private Shard(final int index) {
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package execution;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.TestNG;
+import org.testng.xml.Parser;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import common.Environment;
+
+/**
+ * Runs suites with every test cloned into -Dshard.threads thread shards.
+ * Clones run in parallel, every clone gets its own driver in @BeforeTest
+ * and ShardInterceptor, registered in suite xml, gives it its own part of methods.
+ * Usage: java execution.ShardedSuite src/test/resources/Debug.xml
+ * @author gsikorskiy
+ *
+ */
+public final class ShardedSuite {
+
+	private ShardedSuite() { }
+
+	/**
+	 * Runs suites.
+	 * @param args - paths to suite xml files.
+	 * @throws Exception if suite can't be parsed.
+	 */
+	public static void main(final String[] args) throws Exception {
+		final List<XmlSuite> suites = new ArrayList<>();
+		for (final String path : args) {
+			for (final XmlSuite suite : new Parser(path).parseToList()) {
+				suites.add(shard(suite, Environment.SHARD_THREADS));
+			}
+		}
+		final TestNG testng = new TestNG();
+		testng.setXmlSuites(suites);
+		testng.run();
+		System.exit(testng.getStatus());
+	}
+
+	/**
+	 * Replaces every test of suite with its thread shards.
+	 * @param suite - suite to change.
+	 * @param threads - amount of shards for every test.
+	 * @return the same suite.
+	 */
+	public static XmlSuite shard(final XmlSuite suite, final int threads) {
+		final List<XmlTest> tests = new ArrayList<>();
+		// clone adds itself to tests of suite, so original list is copied
+		for (final XmlTest test : new ArrayList<>(suite.getTests())) {
+			for (int i = 0; i < threads; i++) {
+				final XmlTest shard = copy(test);
+				shard.setName(test.getName() + " ${symbol_pound}" + (i + 1));
+				final Map<String, String> parameters = new HashMap<>(test.getLocalParameters());
+				parameters.put(ShardInterceptor.SHARD_THREAD, String.valueOf(i));
+				parameters.put(ShardInterceptor.SHARD_THREADS, String.valueOf(threads));
+				shard.setParameters(parameters);
+				tests.add(shard);
+			}
+		}
+		suite.setTests(tests);
+		suite.setParallel(XmlSuite.ParallelMode.TESTS);
+		suite.setThreadCount(Math.max(suite.getThreadCount(), tests.size()));
+		return suite;
+	}
+
+	/**
+	 * XmlTest.clone() copies name, groups, parallel mode, verbose, time-out, parameters and packages,
+	 * the rest of settings is copied here.
+	 */
+	private static XmlTest copy(final XmlTest test) {
+		final XmlTest copy = (XmlTest) test.clone();
+		copy.setXmlClasses(test.getXmlClasses());
+		copy.setMethodSelectors(test.getMethodSelectors());
+		copy.setPreserveOrder(test.getPreserveOrder());
+		copy.setThreadCount(test.getThreadCount());
+		copy.setGroupByInstances(test.getGroupByInstances());
+		copy.setSkipFailedInvocationCounts(test.skipFailedInvocationCounts());
+		copy.setAllowReturnValues(test.getAllowReturnValues());
+		copy.setExpression(test.getExpression());
+		for (final Map.Entry<String, String> dependency : test.getXmlDependencyGroups().entrySet()) {
+			copy.addXmlDependencyGroup(dependency.getKey(), dependency.getValue());
+		}
+		return copy;
+	}
+}
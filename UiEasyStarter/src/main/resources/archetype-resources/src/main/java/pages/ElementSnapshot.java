@@ -0,0 +1,161 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package pages;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * State of element: visibility, text and attributes, read at one moment.
+ * States of many elements are read by one script call instead of several calls per element.
+ * @author gsikorskiy
+ *
+ */
+public final class ElementSnapshot {
+
+	private static final String SCRIPT =
+			"var names = arguments[0], result = [];"
+			+ "function sized(e) {"
+			+ "  var rect = e.getBoundingClientRect();"
+			+ "  if (rect.width > 0 && rect.height > 0) { return true; }"
+			+ "  for (var k = 0; k < e.children.length; k++) { if (sized(e.children[k])) { return true; } }"
+			+ "  return false;"
+			+ "}"
+			+ "for (var i = 1; i < arguments.length; i++) {"
+			+ "  var el = arguments[i], shown = !(el.tagName === 'INPUT' && el.type === 'hidden');"
+			+ "  for (var p = el; shown && p && p.nodeType === 1; p = p.parentNode) {"
+			+ "    var style = window.getComputedStyle ? window.getComputedStyle(p, null) : p.currentStyle;"
+			+ "    shown = style.display !== 'none' && style.opacity !== '0'"
+			+ "        && (p !== el || (style.visibility !== 'hidden' && style.visibility !== 'collapse'));"
+			+ "  }"
+			+ "  shown = shown && sized(el);"
+			+ "  var text = '';"
+			+ "  if (shown) { text = el.innerText !== undefined ? el.innerText : el.textContent; }"
+			+ "  var attributes = {};"
+			+ "  for (var j = 0; j < names.length; j++) {"
+			+ "    var value = el.getAttribute(names[j]);"
+			+ "    if (value === null && el[names[j]] !== undefined && typeof el[names[j]] !== 'object') {"
+			+ "      value = String(el[names[j]]);"
+			+ "    }"
+			+ "    attributes[names[j]] = value;"
+			+ "  }"
+			+ "  result.push({displayed: shown, text: text ? String(text).trim() : '', attributes: attributes});"
+			+ "}"
+			+ "return result;";
+
+	private final WebElement element;
+	private final boolean displayed;
+	private final String text;
+	private final Map<String, String> attributes;
+
+	private ElementSnapshot(final WebElement element, final boolean displayed, final String text,
+			final Map<String, String> attributes) {
+		this.element = element;
+		this.displayed = displayed;
+		this.text = text;
+		this.attributes = Collections.unmodifiableMap(attributes);
+	}
+
+	/**
+	 * Reads state of elements by one script call.
+	 * If driver can't execute scripts, state is read from every element.
+	 * @param driver - driver, that found elements.
+	 * @param elements - elements to read.
+	 * @param attributeNames - attributes to read.
+	 * @return snapshots in the same order as elements.
+	 * @throws WebDriverException - if script doesn't return state of every element.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<ElementSnapshot> of(final WebDriver driver, final List<WebElement> elements,
+			final String... attributeNames) {
+		final List<ElementSnapshot> result = new ArrayList<>(elements.size());
+		if (elements.isEmpty()) {
+			return result;
+		}
+		if (!(driver instanceof JavascriptExecutor)) {
+			for (final WebElement element : elements) {
+				result.add(read(element, attributeNames));
+			}
+			return result;
+		}
+		final Object[] arguments = new Object[elements.size() + 1];
+		arguments[0] = Arrays.asList(attributeNames);
+		for (int i = 0; i < elements.size(); i++) {
+			arguments[i + 1] = elements.get(i);
+		}
+		final List<Map<String, Object>> states =
+				(List<Map<String, Object>>) ((JavascriptExecutor) driver).executeScript(SCRIPT, arguments);
+		if (states == null || states.size() != elements.size()) {
+			throw new WebDriverException("Snapshot script returned " + (states == null ? "nothing" : states.size()
+					+ " states") + " for " + elements.size() + " elements.");
+		}
+		for (int i = 0; i < elements.size(); i++) {
+			final Map<String, Object> state = states.get(i);
+			final Map<String, String> attributes = new HashMap<>();
+			final Map<String, Object> values = (Map<String, Object>) state.get("attributes");
+			for (final String name : attributeNames) {
+				final Object value = values == null ? null : values.get(name);
+				attributes.put(name, value == null ? null : value.toString());
+			}
+			result.add(new ElementSnapshot(elements.get(i), Boolean.TRUE.equals(state.get("displayed")),
+					String.valueOf(state.get("text")), attributes));
+		}
+		return result;
+	}
+
+	private static ElementSnapshot read(final WebElement element, final String... attributeNames) {
+		final Map<String, String> attributes = new HashMap<>();
+		for (final String name : attributeNames) {
+			attributes.put(name, element.getAttribute(name));
+		}
+		return new ElementSnapshot(element, element.isDisplayed(), element.getText(), attributes);
+	}
+
+	/**
+	 * @return element, which state was read.
+	 */
+	public WebElement getElement() {
+		return this.element;
+	}
+
+	/**
+	 * Like WebElement.isDisplayed of real browsers, element is hidden if neither it nor its children have size
+	 * (HtmlUnit driver doesn't check size).
+	 * @return true if element was visible.
+	 */
+	public boolean isDisplayed() {
+		return this.displayed;
+	}
+
+	/**
+	 * @return visible text of element, empty for hidden element.
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * Retrieves value of attribute, that was requested in snapshot.
+	 * @param name - attribute name.
+	 * @return value or null if element doesn't have such attribute.
+	 */
+	public String getAttribute(final String name) {
+		return this.attributes.get(name);
+	}
+
+	@Override
+	public String toString() {
+		return "ElementSnapshot [displayed=" + this.displayed + ", text=" + this.text
+				+ ", attributes=" + this.attributes + "]";
+	}
+}
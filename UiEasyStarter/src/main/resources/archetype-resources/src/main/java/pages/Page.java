@@ -7,24 +7,23 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.By;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.PageFactory;
 import org.openqa.selenium.support.ui.ExpectedCondition;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import common.Environment;
 import reporting.CommonReporter;
+import reporting.EventLog;
+import reporting.ScreenshotCapture;
+import webdriver.DriverMetrics;
+import webdriver.NetworkProxy;
 import webdriver.WebDriverStorage;
 
 /**
@@ -39,7 +38,7 @@ public abstract class Page {
 
 	/**
 	 * Constructor injecting the WebDriver interface.
-	 * @param webDriver - constructor should have webDriver parameter for PageFactory.initElements.
+	 * @param webDriver - constructor should have webDriver parameter to be created by Page.open.
 	 */
 	public Page(final WebDriver webDriver) {
 		this.webDriver = webDriver;
@@ -55,8 +54,14 @@ public abstract class Page {
 	public static final <E extends Page> E open(String url, final Class<E> page) {
 		log.info("Open page: " + url);
 		WebDriver wd = WebDriverStorage.getDriver();
+		DriverMetrics.setCurrentPage(page);
+		final Optional<NetworkProxy> proxy = NetworkProxy.of(wd);
+		proxy.ifPresent(p -> p.startPage(page.getSimpleName()));
+		final long started = System.nanoTime();
 		wd.get(url);
-		final E result = PageFactory.initElements(wd, page);
+		EventLog.timing("Open " + page.getSimpleName(), System.nanoTime() - started);
+		proxy.ifPresent(NetworkProxy::finishPage);
+		final E result = PageMetadata.of(page).create(wd);
 		if (!wd.getCurrentUrl().contains(url)) {
 			throw new RuntimeException("Expected url: " + url + "\nBut opened: " + wd.getCurrentUrl());
 		}
@@ -70,7 +75,9 @@ public abstract class Page {
 	 * @return page with initialized web elements
 	 */
 	public static final <E extends Page> E open(final Class<E> page) {
-		return open(getStaticUrl(page).get(), page);
+		return open(PageMetadata.of(page).getUrl().orElseThrow(() -> new RuntimeException(
+				"Page object " + page.getSimpleName() + " doesn't contain public static field URL.\n"
+				+ "Try to open page by open(url, page.class).")), page);
 	}
 	
 	/**
@@ -86,11 +93,21 @@ public abstract class Page {
 	 * @param name - filename or full path.
 	 */
 	public final void saveScreenshot(final String name) {
+		this.saveScreenshot(name, null);
+	}
+
+	/**
+	 * Saves screenshot of element to file @param name. Element is scrolled into view if needed.
+	 * Picture is written with -Dpng.compression level.
+	 * @param name - filename or full path.
+	 * @param element - element to capture, or null for whole screenshot.
+	 */
+	public final void saveScreenshot(final String name, final WebElement element) {
 		final File saved = (name.contains(File.separator))
 				? new File(name)
 				: new File(Environment.SCREENSHOT_PATH, name);
 		try {
-			FileUtils.copyFile(this.takeScreenshot(), saved);
+			ScreenshotCapture.save(this.webDriver, element, saved);
 			CommonReporter.printScreenshot("Saved screenshot: ", saved);
 		} catch (final IOException e) {
 			throw new RuntimeException("Can't save screenshot for the page: "
@@ -98,11 +115,22 @@ public abstract class Page {
 		}
 	}
 
+	/**
+	 * Creates wait for this page with default framework timeout.
+	 * Timeout and polling can be overridden by SmartWait methods.
+	 * @return new wait.
+	 */
+	protected final SmartWait waitFor() {
+		return SmartWait.on(this.webDriver);
+	}
+
 	/**
 	 * Describes ExpectedCondition when element with locator can have different texts.
+	 * State of all candidates is read by one script call.
+	 * Stale element is not handled here, it is retried by SmartWait.
 	 * @param by - locator of element.
 	 * @param text - list of possible texts, written on element.
-	 * @return ExpectedCondition for WebDriverWait.
+	 * @return ExpectedCondition for SmartWait or WebDriverWait.
 	 */
 	protected final ExpectedCondition<WebElement> anyTextToBePresentInElementLocated(final By by,
 			final List<String> text) {
@@ -110,25 +138,20 @@ public abstract class Page {
 		return new ExpectedCondition<WebElement>() {
 			@Override
 			public WebElement apply(final WebDriver driver) {
-				try {
-					driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
-					final List<WebElement> candidates = driver.findElements(by);
-					for (final WebElement item : candidates) {
-						for (final String msg : text) {
-							Page.log.debug("Looking for " + msg);
-							if (item.isDisplayed() && item.getText().contains(msg)) {
-								return item;
-							}
+				for (final ElementSnapshot item : ElementSnapshot.of(driver, driver.findElements(by))) {
+					for (final String msg : text) {
+						if (item.isDisplayed() && item.getText().contains(msg)) {
+							Page.log.debug("Found " + msg);
+							return item.getElement();
 						}
 					}
-					return null;
-				} catch (final StaleElementReferenceException e) {
-					return this.apply(driver);
-				} finally {
-					driver.manage().timeouts().
-					implicitlyWait(Environment.TIMEOUT, TimeUnit.SECONDS);
 				}
+				return null;
+			}
 
+			@Override
+			public String toString() {
+				return "any text from " + text + " to be present in element located by " + by;
 			}
 		};
 	}
@@ -141,10 +164,9 @@ public abstract class Page {
 	 * @return - WebElement or appropriate exception if element not found.
 	 */
 	protected final WebElement findElementWithAnyMessage(final By by, final List<String> messages) {
-		return new WebDriverWait(this.webDriver, Environment.TIMEOUT).
+		return this.waitFor().
 				withMessage("Couldn't find element by \"" + by + "\" with any text from " + messages).
-				until(ExpectedConditions.refreshed(
-								this.anyTextToBePresentInElementLocated(by, messages)));
+				until(this.anyTextToBePresentInElementLocated(by, messages));
 	}
 
 	/**
@@ -154,28 +176,22 @@ public abstract class Page {
 	 * @return - displayed element
 	 */
 	protected final WebElement getDisplayed(final List<WebElement> items) {
-		WebElement result = null;
-		for (final WebElement item : items) {
+		for (final ElementSnapshot item : ElementSnapshot.of(this.webDriver, items)) {
 			if (item.isDisplayed()) {
-				result = item;
-				break;
+				return item.getElement();
 			}
 		}
-		if (result == null) {
-			throw new StaleElementReferenceException("Couldn't find displayed element in the list.");
-		}
-		return result;
+		throw new StaleElementReferenceException("Couldn't find displayed element in the list.");
 	}
-	
-	private static <T> Optional<String> getStaticUrl(final Class<T> page) {
-		String url = null;
-		try {
-			url = (String) page.getDeclaredField("URL").get(null);
-		} catch (IllegalArgumentException | IllegalAccessException
-				| NoSuchFieldException | SecurityException e) {
-			log.error("Page object " + page.getSimpleName() + " doesn't contain public static field URL.\n"
-					+ "Try to open page by open(url, page.class).");
-		}
-		return Optional.of(url);
+
+	/**
+	 * Reads visibility, text and attributes of all elements found by locator.
+	 * Needs one call to find elements and one script call for all of them.
+	 * @param by - locator of elements.
+	 * @param attributeNames - attributes to read.
+	 * @return snapshots in the order elements were found.
+	 */
+	protected final List<ElementSnapshot> snapshot(final By by, final String... attributeNames) {
+		return ElementSnapshot.of(this.webDriver, this.webDriver.findElements(by), attributeNames);
 	}
 }
@@ -0,0 +1,269 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package pages;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.internal.WrapsElement;
+import org.openqa.selenium.support.FindAll;
+import org.openqa.selenium.support.FindBy;
+import org.openqa.selenium.support.FindBys;
+import org.openqa.selenium.support.pagefactory.Annotations;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+import org.openqa.selenium.support.pagefactory.internal.LocatingElementListHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.Environment;
+
+/**
+ * Reflection data of page object class: constructor, locators of elements and URL.
+ * It is collected once per class, so opening of page doesn't scan fields again.
+ * Elements are initialized same way as PageFactory does it.
+ * @author gsikorskiy
+ *
+ */
+final class PageMetadata {
+
+	private static final Logger log = LoggerFactory.getLogger(PageMetadata.class);
+	private static final long ELEMENT_TTL = TimeUnit.MILLISECONDS.toNanos(Environment.ELEMENT_CACHE_TTL);
+	private static final ClassValue<PageMetadata> CACHE = new ClassValue<PageMetadata>() {
+		@Override
+		protected PageMetadata computeValue(final Class<?> type) {
+			return new PageMetadata(type);
+		}
+	};
+
+	private final Class<?> page;
+	private final Constructor<?> constructor;
+	private final boolean withDriver;
+	private final List<ElementField> fields;
+	private final Optional<String> url;
+
+	private PageMetadata(final Class<?> page) {
+		this.page = page;
+		Constructor<?> found;
+		boolean driverParameter = true;
+		try {
+			found = page.getConstructor(WebDriver.class);
+		} catch (final NoSuchMethodException e) {
+			try {
+				found = page.getConstructor();
+				driverParameter = false;
+			} catch (final NoSuchMethodException e1) {
+				found = null;
+			}
+		}
+		this.constructor = found;
+		this.withDriver = driverParameter;
+		final List<ElementField> elements = new ArrayList<>();
+		for (Class<?> type = page; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (final Field field : type.getDeclaredFields()) {
+				final boolean list = isElementList(field);
+				if (!Modifier.isStatic(field.getModifiers()) && (list || field.getType() == WebElement.class)) {
+					field.setAccessible(true);
+					final Annotations annotations = new Annotations(field);
+					elements.add(new ElementField(field, annotations.buildBy(), list, annotations.isLookupCached()));
+				}
+			}
+		}
+		this.fields = Collections.unmodifiableList(elements);
+		this.url = readUrl(page);
+	}
+
+	/**
+	 * Retrieves metadata of class from cache.
+	 * @param page - page object class.
+	 * @return metadata.
+	 */
+	static PageMetadata of(final Class<?> page) {
+		return CACHE.get(page);
+	}
+
+	/**
+	 * @return value of public static field URL, if class has it.
+	 */
+	Optional<String> getUrl() {
+		return this.url;
+	}
+
+	/**
+	 * Creates page object and initializes its elements.
+	 * @param <E> - type of page.
+	 * @param driver - driver to pass to constructor and to search elements.
+	 * @return new page object.
+	 */
+	@SuppressWarnings("unchecked")
+	<E> E create(final WebDriver driver) {
+		if (this.constructor == null) {
+			throw new RuntimeException("Page object " + this.page.getSimpleName()
+					+ " should have public constructor with WebDriver parameter.");
+		}
+		try {
+			final E result = (E) (this.withDriver
+					? this.constructor.newInstance(driver)
+					: this.constructor.newInstance());
+			for (final ElementField element : this.fields) {
+				element.field.set(result, element.proxy(driver));
+			}
+			return result;
+		} catch (final InstantiationException | IllegalAccessException e) {
+			throw new RuntimeException("Can't create page object " + this.page.getSimpleName(), e);
+		} catch (final InvocationTargetException e) {
+			throw new RuntimeException("Can't create page object " + this.page.getSimpleName(), e.getCause());
+		}
+	}
+
+	private static boolean isElementList(final Field field) {
+		if (!List.class.isAssignableFrom(field.getType())) {
+			return false;
+		}
+		final Type type = field.getGenericType();
+		if (!(type instanceof ParameterizedType)
+				|| ((ParameterizedType) type).getActualTypeArguments()[0] != WebElement.class) {
+			return false;
+		}
+		return field.getAnnotation(FindBy.class) != null || field.getAnnotation(FindBys.class) != null
+				|| field.getAnnotation(FindAll.class) != null;
+	}
+
+	private static Optional<String> readUrl(final Class<?> page) {
+		try {
+			final Field field = page.getDeclaredField("URL");
+			if (Modifier.isStatic(field.getModifiers())) {
+				field.setAccessible(true);
+				return Optional.ofNullable((String) field.get(null));
+			}
+		} catch (final NoSuchFieldException | IllegalAccessException | ClassCastException e) {
+			log.debug("Page object " + page.getSimpleName() + " has no URL: " + e);
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Field of page object with element or list of elements.
+	 */
+	private static final class ElementField {
+		private final Field field;
+		private final By by;
+		private final boolean list;
+		private final boolean cached;
+
+		private ElementField(final Field field, final By by, final boolean list, final boolean cached) {
+			this.field = field;
+			this.by = by;
+			this.list = list;
+			this.cached = cached;
+		}
+
+		private Object proxy(final SearchContext context) {
+			final Locator locator = new Locator(context, this.by, this.cached);
+			final ClassLoader loader = this.field.getDeclaringClass().getClassLoader();
+			if (this.list) {
+				return Proxy.newProxyInstance(loader, new Class<?>[] {List.class},
+						new LocatingElementListHandler(locator));
+			}
+			return Proxy.newProxyInstance(loader,
+					new Class<?>[] {WebElement.class, WrapsElement.class, Locatable.class},
+					new ElementHandler(locator));
+		}
+	}
+
+	/**
+	 * Locator, that keeps found element for -Delement.cache.ttl milliseconds
+	 * or forever for fields with CacheLookup.
+	 */
+	private static final class Locator implements ElementLocator {
+		private final SearchContext context;
+		private final By by;
+		private final boolean forever;
+		private WebElement element;
+		private List<WebElement> elements;
+		private long foundAt;
+
+		private Locator(final SearchContext context, final By by, final boolean forever) {
+			this.context = context;
+			this.by = by;
+			this.forever = forever;
+		}
+
+		private boolean isFresh() {
+			return this.forever || (ELEMENT_TTL > 0 && System.nanoTime() - this.foundAt < ELEMENT_TTL);
+		}
+
+		@Override
+		public WebElement findElement() {
+			if (this.element == null || !this.isFresh()) {
+				this.element = this.context.findElement(this.by);
+				this.foundAt = System.nanoTime();
+			}
+			return this.element;
+		}
+
+		@Override
+		public List<WebElement> findElements() {
+			if (this.elements == null || !this.isFresh()) {
+				this.elements = this.context.findElements(this.by);
+				this.foundAt = System.nanoTime();
+			}
+			return this.elements;
+		}
+
+		private void reset() {
+			this.element = null;
+			this.elements = null;
+		}
+	}
+
+	/**
+	 * Finds element before every call. Cached element, that became stale, is searched again once.
+	 */
+	private static final class ElementHandler implements InvocationHandler {
+		private final Locator locator;
+
+		private ElementHandler(final Locator locator) {
+			this.locator = locator;
+		}
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			final WebElement element = this.locator.findElement();
+			if ("getWrappedElement".equals(method.getName())) {
+				return element;
+			}
+			try {
+				return method.invoke(element, args);
+			} catch (final InvocationTargetException e) {
+				if (!(e.getCause() instanceof StaleElementReferenceException) || !this.locator.isFresh()) {
+					throw e.getCause();
+				}
+				this.locator.reset();
+				try {
+					return method.invoke(this.locator.findElement(), args);
+				} catch (final InvocationTargetException e1) {
+					throw e1.getCause();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,173 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package pages;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+
+import common.Environment;
+
+/**
+ * Waits for condition with adaptive polling: first polls are frequent, then interval grows up to max.
+ * Implicit wait of driver is switched off while wait is polling, so absent element doesn't block one poll
+ * for whole implicit timeout. It is restored to framework timeout, that is set by WebDriverFactory.
+ * Stale elements are retried limited amount of times per poll.
+ * @author gsikorskiy
+ *
+ */
+public final class SmartWait {
+
+	private static final Logger log = LoggerFactory.getLogger(SmartWait.class);
+	private static final long DEFAULT_INITIAL_INTERVAL = 50;
+	private static final long DEFAULT_MAX_INTERVAL = 1000;
+	private static final double BACKOFF = 1.5;
+	private static final int DEFAULT_STALE_RETRIES = 3;
+	private static final ThreadLocal<Boolean> POLLING = ThreadLocal.withInitial(() -> false);
+
+	private final WebDriver driver;
+	private long timeout = TimeUnit.SECONDS.toMillis(Environment.TIMEOUT);
+	private long initialInterval = DEFAULT_INITIAL_INTERVAL;
+	private long maxInterval = DEFAULT_MAX_INTERVAL;
+	private int staleRetries = DEFAULT_STALE_RETRIES;
+	private String message;
+
+	private SmartWait(final WebDriver driver) {
+		this.driver = driver;
+	}
+
+	/**
+	 * Creates wait with default framework timeout.
+	 * @param driver - driver to pass to conditions.
+	 * @return new wait.
+	 */
+	public static SmartWait on(final WebDriver driver) {
+		return new SmartWait(driver);
+	}
+
+	/**
+	 * Overrides timeout of this wait.
+	 * @param duration - amount of time units.
+	 * @param unit - time unit.
+	 * @return this wait.
+	 */
+	public SmartWait withTimeout(final long duration, final TimeUnit unit) {
+		this.timeout = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Overrides polling intervals of this wait.
+	 * @param initial - interval after the first poll.
+	 * @param max - interval, that is not exceeded by backoff.
+	 * @param unit - time unit.
+	 * @return this wait.
+	 */
+	public SmartWait pollingEvery(final long initial, final long max, final TimeUnit unit) {
+		this.initialInterval = Math.max(1, unit.toMillis(initial));
+		this.maxInterval = Math.max(this.initialInterval, unit.toMillis(max));
+		return this;
+	}
+
+	/**
+	 * Overrides how many times condition is reevaluated at once, when element became stale.
+	 * @param retries - amount of retries.
+	 * @return this wait.
+	 */
+	public SmartWait retryStale(final int retries) {
+		this.staleRetries = Math.max(0, retries);
+		return this;
+	}
+
+	/**
+	 * Sets message of timeout exception.
+	 * @param text - message.
+	 * @return this wait.
+	 */
+	public SmartWait withMessage(final String text) {
+		this.message = text;
+		return this;
+	}
+
+	/**
+	 * Polls condition until it returns neither null nor false.
+	 * @param <T> - type of result.
+	 * @param condition - condition to check, e.g. ExpectedCondition.
+	 * @return result of condition.
+	 */
+	public <T> T until(final Function<? super WebDriver, T> condition) {
+		if (POLLING.get()) {
+			// nested wait inside of condition, implicit wait is already switched off
+			return this.poll(condition);
+		}
+		final WebDriver.Timeouts timeouts = this.driver.manage().timeouts();
+		timeouts.implicitlyWait(0, TimeUnit.MILLISECONDS);
+		POLLING.set(true);
+		try {
+			return this.poll(condition);
+		} finally {
+			POLLING.set(false);
+			timeouts.implicitlyWait(Environment.TIMEOUT, TimeUnit.SECONDS);
+		}
+	}
+
+	private <T> T poll(final Function<? super WebDriver, T> condition) {
+		final long start = System.nanoTime();
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+		long interval = this.initialInterval;
+		int polls = 0;
+		RuntimeException last = null;
+		while (true) {
+			polls++;
+			try {
+				final T result = this.apply(condition);
+				if (result != null && !Boolean.FALSE.equals(result)) {
+					return result;
+				}
+			} catch (final NoSuchElementException | StaleElementReferenceException e) {
+				last = e;
+			}
+			final long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (left <= 0) {
+				break;
+			}
+			sleep(Math.min(interval, left));
+			interval = Math.min(this.maxInterval, (long) (interval * BACKOFF));
+		}
+		final long spent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		final String text = (this.message == null ? "Condition " + condition + " is not met" : this.message)
+				+ " (tried for " + spent + " ms, " + polls + " polls)";
+		throw new TimeoutException(text, last);
+	}
+
+	private <T> T apply(final Function<? super WebDriver, T> condition) {
+		for (int attempt = 0;; attempt++) {
+			try {
+				return condition.apply(this.driver);
+			} catch (final StaleElementReferenceException e) {
+				if (attempt >= this.staleRetries) {
+					throw e;
+				}
+				log.debug("Element became stale, retry " + (attempt + 1) + " of " + this.staleRetries);
+			}
+		}
+	}
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebDriverException(e);
+		}
+	}
+}
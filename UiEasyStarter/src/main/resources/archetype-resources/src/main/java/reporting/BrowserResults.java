@@ -0,0 +1,104 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+
+import webdriver.Browser;
+
+/**
+ * Aggregates results of test methods per browser, when method is invoked for browser matrix.
+ * Summary is written to browsers.html.
+ * @author gsikorskiy
+ *
+ */
+final class BrowserResults {
+
+	private static final String HTML_FILE = "browsers.html";
+	private static final int PASSED = 0;
+	private static final int FAILED = 1;
+	private static final int SKIPPED = 2;
+	private static final int MILLIS = 3;
+	private static final Logger log = LoggerFactory.getLogger(BrowserResults.class);
+	private static final ConcurrentMap<String, AtomicLongArray> RESULTS = new ConcurrentHashMap<>();
+
+	private BrowserResults() { }
+
+	/**
+	 * Counts result of test method, if it has Browser parameter.
+	 * @param result - finished test method.
+	 */
+	static void record(final ITestResult result) {
+		final Browser browser = findBrowser(result.getParameters());
+		if (browser == null) {
+			return;
+		}
+		final int status;
+		switch (result.getStatus()) {
+			case ITestResult.SUCCESS:
+				status = PASSED;
+				break;
+			case ITestResult.SKIP:
+				status = SKIPPED;
+				break;
+			default:
+				status = FAILED;
+		}
+		final AtomicLongArray counters = RESULTS.computeIfAbsent(browser.toString(), k -> new AtomicLongArray(4));
+		counters.incrementAndGet(status);
+		counters.addAndGet(MILLIS, Math.max(0, result.getEndMillis() - result.getStartMillis()));
+	}
+
+	/**
+	 * Writes summary per browser. Nothing is written if browser matrix was not used.
+	 * @param dir - folder of html report.
+	 */
+	static void writeReport(final File dir) {
+		if (RESULTS.isEmpty()) {
+			return;
+		}
+		final StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Browsers</title></head><body><table border=${symbol_escape}"1${symbol_escape}">");
+		html.append("<tr><th>Browser</th><th>Passed</th><th>Failed</th><th>Skipped</th><th>Duration, s</th></tr>");
+		for (final Map.Entry<String, AtomicLongArray> entry : new TreeMap<>(RESULTS).entrySet()) {
+			final AtomicLongArray counters = entry.getValue();
+			final String color = counters.get(FAILED) > 0 ? ReportColor.FAILED.getColor()
+					: counters.get(SKIPPED) > 0 ? ReportColor.WARNING.getColor() : ReportColor.PASSED.getColor();
+			html.append("<tr style=${symbol_escape}"").append(color).append("${symbol_escape}"><td>").append(entry.getKey())
+				.append("</td><td>").append(counters.get(PASSED))
+				.append("</td><td>").append(counters.get(FAILED))
+				.append("</td><td>").append(counters.get(SKIPPED))
+				.append("</td><td>").append(String.format("%.1f", counters.get(MILLIS) / 1000.0))
+				.append("</td></tr>");
+		}
+		html.append("</table></body></html>");
+		try {
+			Files.createDirectories(dir.toPath());
+			Files.write(new File(dir, HTML_FILE).toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			log.error("Unable to write browsers report to " + dir, e);
+		}
+	}
+
+	private static Browser findBrowser(final Object[] parameters) {
+		for (final Object parameter : parameters) {
+			if (parameter instanceof Browser) {
+				return (Browser) parameter;
+			}
+		}
+		return null;
+	}
+}
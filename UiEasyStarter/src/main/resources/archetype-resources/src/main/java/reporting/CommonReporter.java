@@ -4,11 +4,13 @@
 package reporting;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
 import org.testng.Reporter;
 
 /**
@@ -18,7 +20,11 @@ import org.testng.Reporter;
  *
  */
 public final class CommonReporter {
-	private static int stepId = 0;
+	private static final String STEPS_ATTRIBUTE = "steps";
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH:mm:ss:SSS");
+	private static final AtomicInteger BLOCK_IDS = new AtomicInteger();
+	private static final ThreadLocal<Steps> ORPHAN_STEPS = ThreadLocal.withInitial(Steps::new);
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
 	private static Logger log = LoggerFactory.getLogger(CommonReporter.class);
 
 	private CommonReporter() {
@@ -57,29 +63,80 @@ public final class CommonReporter {
 	 * @param picture - file with image
 	 */
 	public static void printScreenshot(final String descr, final File picture) {
-		Reporter.log(descr + "<br><img src=${symbol_escape}"" + picture.getAbsolutePath() + "${symbol_escape}">");
+		EventLog.screenshot(descr, picture);
+		ReportAppender.write(descr + "<br><img src=${symbol_escape}"" + picture.getAbsolutePath() + "${symbol_escape}">");
+	}
+
+	/**
+	 * Allows to add thumbnail of picture to report, that is linked to the whole picture.
+	 * @param descr - info to add to report
+	 * @param picture - file with image
+	 * @param thumbnail - file with downscaled image
+	 */
+	public static void printScreenshot(final String descr, final File picture, final File thumbnail) {
+		EventLog.screenshot(descr, picture);
+		ReportAppender.write(descr + "<br><a href=${symbol_escape}"" + picture.getAbsolutePath() + "${symbol_escape}">"
+				+ "<img src=${symbol_escape}"" + thumbnail.getAbsolutePath() + "${symbol_escape}"></a>");
 	}
 
 	private static void reportDropdownBlock(final String text,
 			final String color) {
 		Reporter.setEscapeHtml(false);
-		SimpleDateFormat simpleDateFormat = new SimpleDateFormat(
-				"yyyy-MM-dd_HH:mm:ss:SSS");
-		String timestamp = simpleDateFormat.format(new Date());
-		if (stepId > 0) {
-			Reporter.log("</div>");
+		final Steps steps = getSteps();
+		if (steps.count > 0) {
+			ReportAppender.write("</div>");
+			EventLog.stepFinished();
 		}
-		StringBuilder logEvent = new StringBuilder();
-		logEvent.append("<a href=${symbol_escape}"");
-		logEvent.append("javascript:toggleElement('step-" + stepId
-				+ "', 'block')${symbol_escape}" ");
+		EventLog.stepStarted(text, ReportColor.METHOD.getColor().equals(color));
+		ReportAppender.write(buildDropdownBlock(text, color, steps.block + "-" + steps.count));
+		steps.count++;
+	}
+
+	/**
+	 * Builds html of expand/collapse block in buffer of current thread.
+	 * @param text - title of block.
+	 * @param color - style of title.
+	 * @param id - unique id of block.
+	 * @return html, that opens block.
+	 */
+	static String buildDropdownBlock(final String text, final String color, final String id) {
+		final StringBuilder logEvent = BUFFER.get();
+		logEvent.setLength(0);
+		logEvent.append("<a href=${symbol_escape}"javascript:toggleElement('step-");
+		logEvent.append(id);
+		logEvent.append("', 'block')${symbol_escape}" ");
 		logEvent.append("title=${symbol_escape}"Click to expand/collapse${symbol_escape}" ");
-		logEvent.append("style=${symbol_escape}"" + color + "${symbol_escape}">");
+		logEvent.append("style=${symbol_escape}"").append(color).append("${symbol_escape}">");
 		logEvent.append("<b>");
-		logEvent.append(timestamp + " " + text);
+		TIMESTAMP.formatTo(LocalDateTime.now(), logEvent);
+		logEvent.append(' ').append(text);
 		logEvent.append("</b></a><br />");
-		logEvent.append("<div class=${symbol_escape}"testStep${symbol_escape}" id=${symbol_escape}"step-" + stepId + "${symbol_escape}">");
-		Reporter.log(logEvent.toString());
-		stepId++;
+		logEvent.append("<div class=${symbol_escape}"testStep${symbol_escape}" id=${symbol_escape}"step-").append(id).append("${symbol_escape}">");
+		return logEvent.toString();
+	}
+
+	/**
+	 * Steps are counted separately for every test result,
+	 * steps outside of tests are counted for every thread.
+	 */
+	private static Steps getSteps() {
+		final ITestResult tr = Reporter.getCurrentTestResult();
+		if (tr == null) {
+			return ORPHAN_STEPS.get();
+		}
+		Steps steps = (Steps) tr.getAttribute(STEPS_ATTRIBUTE);
+		if (steps == null) {
+			steps = new Steps();
+			tr.setAttribute(STEPS_ATTRIBUTE, steps);
+		}
+		return steps;
+	}
+
+	/**
+	 * Step counter of one test result.
+	 */
+	private static final class Steps {
+		private final int block = BLOCK_IDS.incrementAndGet();
+		private int count;
 	}
 }
@@ -0,0 +1,362 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+/**
+ * Append-only binary log of test events, written to memory-mapped files in folder of -Devent.log.
+ * Every run writes own subfolder of numbered segments. Writer reserves place for record by atomic counter,
+ * so there are no locks, except of switching to the next segment.
+ * Length of record and its marker are written first and length is written again as commit mark after the record,
+ * so records of crashed JVM are kept by OS and only unfinished records are lost.
+ * Reader skips holes of records, that were reserved but not written, by searching the next marker.
+ * Log is rendered to html and JUnit xml by EventLogRenderer.
+ * @author gsikorskiy
+ *
+ */
+public final class EventLog {
+
+	/**
+	 * Type of record.
+	 */
+	public enum Type {
+		/**
+		 * Test or configuration method is started. Text is class and method name separated by tab,
+		 * flag is 1 for configuration method, value is start time.
+		 */
+		TEST_START,
+		/**
+		 * Method is finished. Flag is ITestResult status, value is duration in milliseconds,
+		 * text is exception of failed method.
+		 */
+		TEST_END,
+		/**
+		 * Step is started, text is its description, flag is 1 for method description.
+		 */
+		STEP_START,
+		/**
+		 * Previous step is finished.
+		 */
+		STEP_END,
+		/**
+		 * Log line, flag is level: 0 - trace, 1 - debug, 2 - info, 4 - error.
+		 */
+		LOG,
+		/**
+		 * Log line of warning.
+		 */
+		WARNING,
+		/**
+		 * Screenshot, text is path of file, that is named by hash of picture, and its description after tab.
+		 */
+		SCREENSHOT,
+		/**
+		 * Measured time, text is name, value is time in nanoseconds.
+		 */
+		TIMING
+	}
+
+	static final int MAGIC = 0x54455654;
+	static final int VERSION = 2;
+	static final int SEGMENT_HEADER = 16;
+	static final int COMMIT = 0;
+	static final int LENGTH = 4;
+	static final int MARKER = 8;
+	static final int TYPE = 12;
+	static final int FLAG = 13;
+	static final int TEXT_LENGTH = 14;
+	static final int THREAD = 16;
+	static final int TIME = 24;
+	static final int TEST = 32;
+	static final int VALUE = 40;
+	static final int TEXT = 48;
+	static final int RECORD_MARKER = 0x45565254;
+	static final int ALIGNMENT = 8;
+	static final String SEGMENT_FORMAT = "%06d.events";
+
+	private static final int MAX_TEXT = 4096;
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final String ID_ATTRIBUTE = "event.id";
+	private static final byte[] NO_TEXT = new byte[0];
+	private static final Logger log = LoggerFactory.getLogger(EventLog.class);
+	private static final AtomicLong TEST_IDS = new AtomicLong();
+
+	/**
+	 * Folder of event log. Event log options are read directly, not through Environment,
+	 * so logging doesn't require -Dtest.site.
+	 * Can be set by using -Devent.log option
+	 */
+	private static final String FOLDER = System.getProperty("event.log", "").trim();
+
+	/**
+	 * Size of one memory-mapped file of event log in megabytes.
+	 * Can be set by using -Devent.log.segment.size option
+	 */
+	private static final int SEGMENT_SIZE = Integer.getInteger("event.log.segment.size", 16);
+
+	private EventLog() { }
+
+	/**
+	 * @return true if events are written.
+	 */
+	public static boolean isEnabled() {
+		return !FOLDER.isEmpty() && Run.current != null;
+	}
+
+	/**
+	 * @return folder of segments of current run, or null if event log is disabled.
+	 */
+	public static File getRunFolder() {
+		return FOLDER.isEmpty() ? null : Run.FOLDER;
+	}
+
+	/**
+	 * Writes start of test or configuration method. Method is started implicitly by its first event,
+	 * so it is enough to call it from listener.
+	 * @param result - started method.
+	 */
+	public static void testStarted(final ITestResult result) {
+		if (isEnabled()) {
+			testId(result);
+		}
+	}
+
+	/**
+	 * Writes result of finished method.
+	 * @param result - finished method.
+	 */
+	public static void testFinished(final ITestResult result) {
+		if (!isEnabled()) {
+			return;
+		}
+		final Throwable error = result.getThrowable();
+		append(Type.TEST_END, result.getStatus(), testId(result), result.getEndMillis() - result.getStartMillis(),
+				error == null ? null : error.toString());
+	}
+
+	/**
+	 * Writes start of step of current test.
+	 * @param description - description of step.
+	 * @param method - true for description of test method.
+	 */
+	public static void stepStarted(final String description, final boolean method) {
+		if (isEnabled()) {
+			append(Type.STEP_START, method ? 1 : 0, currentTest(), 0, description);
+		}
+	}
+
+	/**
+	 * Writes end of previous step of current test.
+	 */
+	public static void stepFinished() {
+		if (isEnabled()) {
+			append(Type.STEP_END, 0, currentTest(), 0, null);
+		}
+	}
+
+	/**
+	 * Writes log line of current test.
+	 * @param level - logback level of line, e.g. Level.INFO_INT.
+	 * @param message - text of line.
+	 */
+	public static void log(final int level, final String message) {
+		if (isEnabled()) {
+			final int flag = level / 10000;
+			append(flag == 3 ? Type.WARNING : Type.LOG, flag, currentTest(), 0, message);
+		}
+	}
+
+	/**
+	 * Writes reference to screenshot of current test.
+	 * @param description - description of screenshot.
+	 * @param picture - file of screenshot.
+	 */
+	public static void screenshot(final String description, final File picture) {
+		if (isEnabled()) {
+			append(Type.SCREENSHOT, 0, currentTest(), 0, picture.getAbsolutePath() + "\t" + description);
+		}
+	}
+
+	/**
+	 * Writes measured time of current test.
+	 * @param name - what is measured.
+	 * @param nanos - time in nanoseconds.
+	 */
+	public static void timing(final String name, final long nanos) {
+		if (isEnabled()) {
+			append(Type.TIMING, 0, currentTest(), nanos, name);
+		}
+	}
+
+	/**
+	 * Writes mapped pages of current segment to disk. It isn't needed, if only JVM crashes,
+	 * because pages are kept by OS.
+	 */
+	public static void flush() {
+		final Segment segment = isEnabled() ? Run.current : null;
+		if (segment != null) {
+			segment.buffer.force();
+		}
+	}
+
+	private static long currentTest() {
+		return testId(Reporter.getCurrentTestResult());
+	}
+
+	/**
+	 * Id of method is kept in attribute of its result. TEST_START is written, when id is assigned.
+	 */
+	private static long testId(final ITestResult result) {
+		if (result == null) {
+			return 0;
+		}
+		final Object id = result.getAttribute(ID_ATTRIBUTE);
+		if (id != null) {
+			return (Long) id;
+		}
+		final long next = TEST_IDS.incrementAndGet();
+		result.setAttribute(ID_ATTRIBUTE, next);
+		final Object[] parameters = result.getParameters();
+		final StringBuilder name = new StringBuilder(result.getTestClass().getName()).append('\t').append(result.getName());
+		if (parameters != null && parameters.length > 0) {
+			name.append('[');
+			for (int i = 0; i < parameters.length; i++) {
+				name.append(i > 0 ? ", " : "").append(parameters[i]);
+			}
+			name.append(']');
+		}
+		append(Type.TEST_START, result.getMethod().isTest() ? 0 : 1, next, result.getStartMillis(), name.toString());
+		return next;
+	}
+
+	private static void append(final Type type, final int flag, final long test, final long value, final String text) {
+		final byte[] bytes = encode(text);
+		final int length = (TEXT + bytes.length + ALIGNMENT - 1) & -ALIGNMENT;
+		Segment segment = Run.current;
+		while (segment != null) {
+			final long position = segment.reserved.getAndAdd(length);
+			if (position + length <= segment.capacity) {
+				segment.write((int) position, length, type, flag, test, value, bytes);
+				return;
+			}
+			segment = next(segment);
+		}
+	}
+
+	private static byte[] encode(final String text) {
+		if (text == null || text.isEmpty()) {
+			return NO_TEXT;
+		}
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= MAX_TEXT) {
+			return bytes;
+		}
+		final byte[] cut = new byte[MAX_TEXT];
+		System.arraycopy(bytes, 0, cut, 0, MAX_TEXT);
+		return cut;
+	}
+
+	/**
+	 * The only lock of event log: writers, that don't fit into full segment, wait for the next one.
+	 */
+	private static synchronized Segment next(final Segment full) {
+		if (Run.current == full) {
+			Run.current = Segment.open(Run.FOLDER, full.number + 1);
+			if (Run.current == null) {
+				log.error("Event log is stopped after segment " + full.number);
+			}
+		}
+		return Run.current;
+	}
+
+	/**
+	 * Folder and current segment of this run. They are created on first event, only if event log is enabled.
+	 */
+	private static final class Run {
+		private static final File FOLDER = new File(EventLog.FOLDER,
+				new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()));
+		private static volatile Segment current = Segment.open(FOLDER, 1);
+
+		static {
+			if (current != null) {
+				log.info("Event log is written to " + FOLDER.getAbsolutePath());
+			}
+		}
+
+		private Run() { }
+	}
+
+	/**
+	 * One memory-mapped file of event log.
+	 */
+	private static final class Segment {
+		private final int number;
+		private final int capacity;
+		private final MappedByteBuffer buffer;
+		private final AtomicLong reserved = new AtomicLong(SEGMENT_HEADER);
+		private final AtomicLong committed = new AtomicLong();
+
+		private Segment(final int number, final MappedByteBuffer buffer) {
+			this.number = number;
+			this.capacity = buffer.capacity();
+			this.buffer = buffer;
+			this.buffer.putInt(0, MAGIC);
+			this.buffer.putInt(4, VERSION);
+			this.buffer.putLong(8, System.currentTimeMillis());
+		}
+
+		private static Segment open(final File folder, final int number) {
+			final File file = new File(folder, String.format(SEGMENT_FORMAT, number));
+			if (!folder.isDirectory() && !folder.mkdirs()) {
+				log.error("Cann't create folder of event log " + folder);
+				return null;
+			}
+			// mapping stays valid after channel is closed
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+				return new Segment(number, channel.map(FileChannel.MapMode.READ_WRITE, 0,
+						SEGMENT_SIZE * MEGABYTE));
+			} catch (final IOException e) {
+				log.error("Cann't map segment of event log " + file, e);
+				return null;
+			}
+		}
+
+		/**
+		 * Writes record to reserved place. Absolute puts don't change state of buffer,
+		 * so threads write their records in parallel.
+		 */
+		private void write(final int position, final int length, final Type type, final int flag,
+				final long test, final long value, final byte[] text) {
+			this.buffer.putInt(position + LENGTH, length);
+			this.buffer.putInt(position + MARKER, RECORD_MARKER);
+			this.buffer.put(position + TYPE, (byte) type.ordinal());
+			this.buffer.put(position + FLAG, (byte) flag);
+			this.buffer.putShort(position + TEXT_LENGTH, (short) text.length);
+			this.buffer.putInt(position + THREAD, (int) Thread.currentThread().getId());
+			this.buffer.putLong(position + TIME, System.currentTimeMillis());
+			this.buffer.putLong(position + TEST, test);
+			this.buffer.putLong(position + VALUE, value);
+			for (int i = 0; i < text.length; i++) {
+				this.buffer.put(position + TEXT + i, text[i]);
+			}
+			// atomic increment is a full fence, so commit mark can't be written before the record
+			this.committed.incrementAndGet();
+			this.buffer.putInt(position + COMMIT, length);
+		}
+	}
+}
@@ -0,0 +1,329 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.ITestResult;
+
+/**
+ * Renders event log of one run to events.html and junit.xml.
+ * It doesn't need Environment, so it can be run for log of crashed JVM:
+ * java reporting.EventLogRenderer [folder of run or of all runs] [output folder].
+ * Methods, that have no result in log, are shown as unfinished.
+ * @author gsikorskiy
+ *
+ */
+public final class EventLogRenderer {
+
+	private static final String HTML_FILE = "events.html";
+	private static final String JUNIT_FILE = "junit.xml";
+	private static final int UNFINISHED = -1;
+	private static final EventLog.Type[] TYPES = EventLog.Type.values();
+	private static final String SCRIPT = "<script type=${symbol_escape}"text/javascript${symbol_escape}">"
+			+ "function toggleElement(id, display) { var e = document.getElementById(id);"
+			+ " e.style.display = e.style.display == display ? 'none' : display; }</script>";
+
+	private final Map<Long, Method> methods = new LinkedHashMap<>();
+	private final SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss:SSS");
+	private int steps;
+	private long records;
+
+	private EventLogRenderer() {
+		this.methods.put(0L, new Method("", "Outside of tests", true, 0));
+	}
+
+	/**
+	 * Renders event log.
+	 * @param args - folder of run, or folder of -Devent.log to render the latest run; output folder,
+	 *               folder of run by default.
+	 * @throws IOException if log can't be read or report can't be written.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: EventLogRenderer <event log folder> [output folder]");
+			return;
+		}
+		final File run = findRun(new File(args[0]));
+		final File output = args.length > 1 ? new File(args[1]) : run;
+		render(run, output);
+		System.out.println("Report is written to " + new File(output, HTML_FILE).getAbsolutePath());
+	}
+
+	/**
+	 * Renders segments of run.
+	 * @param run - folder with segments of one run.
+	 * @param output - folder of events.html and junit.xml.
+	 * @throws IOException if log can't be read or report can't be written.
+	 */
+	public static void render(final File run, final File output) throws IOException {
+		final EventLogRenderer renderer = new EventLogRenderer();
+		for (int number = 1; ; number++) {
+			final File segment = new File(run, String.format(EventLog.SEGMENT_FORMAT, number));
+			if (!segment.isFile()) {
+				break;
+			}
+			renderer.read(segment);
+		}
+		Files.createDirectories(output.toPath());
+		renderer.writeHtml(new File(output, HTML_FILE));
+		renderer.writeJUnit(new File(output, JUNIT_FILE));
+	}
+
+	private static File findRun(final File folder) throws IOException {
+		if (new File(folder, String.format(EventLog.SEGMENT_FORMAT, 1)).isFile()) {
+			return folder;
+		}
+		final File[] runs = folder.listFiles(f -> new File(f, String.format(EventLog.SEGMENT_FORMAT, 1)).isFile());
+		if (runs == null || runs.length == 0) {
+			throw new IOException("There is no event log in " + folder);
+		}
+		// names of runs are timestamps
+		Arrays.sort(runs);
+		return runs[runs.length - 1];
+	}
+
+	private void read(final File file) throws IOException {
+		final MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < EventLog.SEGMENT_HEADER || buffer.getInt(0) != EventLog.MAGIC
+				|| buffer.getInt(4) != EventLog.VERSION) {
+			throw new IOException(file + " is not event log of version " + EventLog.VERSION);
+		}
+		int position = EventLog.SEGMENT_HEADER;
+		while (position + EventLog.TEXT <= buffer.capacity()) {
+			final int length = buffer.getInt(position + EventLog.LENGTH);
+			if (!isRecord(buffer, position, length)) {
+				// record was reserved, but JVM stopped before its header was written,
+				// or rest of segment is not written: next committed record is searched till end of segment
+				position += EventLog.ALIGNMENT;
+				continue;
+			}
+			if (buffer.getInt(position + EventLog.COMMIT) == length) {
+				this.apply(buffer, position);
+				this.records++;
+			}
+			position += length;
+		}
+	}
+
+	/**
+	 * Checks that position contains header of reserved record. Length is aligned and fits into segment.
+	 */
+	private static boolean isRecord(final MappedByteBuffer buffer, final int position, final int length) {
+		return length >= EventLog.TEXT && length % EventLog.ALIGNMENT == 0 && position + length <= buffer.capacity()
+				&& buffer.getInt(position + EventLog.MARKER) == EventLog.RECORD_MARKER;
+	}
+
+	private void apply(final MappedByteBuffer buffer, final int position) {
+		final EventLog.Type type = TYPES[buffer.get(position + EventLog.TYPE)];
+		final int flag = buffer.get(position + EventLog.FLAG);
+		final long test = buffer.getLong(position + EventLog.TEST);
+		final long value = buffer.getLong(position + EventLog.VALUE);
+		final long millis = buffer.getLong(position + EventLog.TIME);
+		final byte[] bytes = new byte[buffer.getShort(position + EventLog.TEXT_LENGTH) & 0xFFFF];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(position + EventLog.TEXT + i);
+		}
+		final String text = new String(bytes, StandardCharsets.UTF_8);
+
+		if (type == EventLog.Type.TEST_START) {
+			final String[] name = text.split("\t", 2);
+			this.methods.put(test, new Method(name[0], name.length > 1 ? name[1] : "", flag == 1, value));
+			return;
+		}
+		final Method method = this.methods.computeIfAbsent(test, id -> new Method("", "Method " + id, false, millis));
+		switch (type) {
+			case TEST_END:
+				method.status = flag;
+				method.duration = value;
+				method.error = text;
+				break;
+			case STEP_START:
+				method.closeStep();
+				method.html.append("<a href=${symbol_escape}"javascript:toggleElement('step-").append(++this.steps)
+					.append("', 'block')${symbol_escape}" title=${symbol_escape}"Click to expand/collapse${symbol_escape}" style=${symbol_escape}"")
+					.append(flag == 1 ? ReportColor.METHOD.getColor() : ReportColor.STEP.getColor()).append("${symbol_escape}"><b>")
+					.append(this.time.format(new Date(millis))).append(' ').append(escape(text))
+					.append("</b></a><br /><div class=${symbol_escape}"testStep${symbol_escape}" id=${symbol_escape}"step-")
+					.append(this.steps).append("${symbol_escape}">");
+				method.stepOpen = true;
+				break;
+			case STEP_END:
+				method.closeStep();
+				break;
+			case WARNING:
+				method.html.append("<div style=${symbol_escape}"").append(ReportColor.WARNING.getColor()).append("${symbol_escape}">")
+					.append(escape(text)).append("</div>");
+				method.output.append("WARN ").append(text).append('\n');
+				break;
+			case LOG:
+				method.html.append(escape(text)).append("<br />");
+				method.output.append(text).append('\n');
+				break;
+			case SCREENSHOT:
+				final String[] screenshot = text.split("\t", 2);
+				method.html.append(escape(screenshot.length > 1 ? screenshot[1] : "")).append("<br><img src=${symbol_escape}"")
+					.append(new File(screenshot[0]).toURI()).append("${symbol_escape}"><br />");
+				break;
+			case TIMING:
+				method.html.append(escape(text)).append(": ").append(String.format("%.3f ms", value / 1e6)).append("<br />");
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void writeHtml(final File file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write("<html><head><meta charset=${symbol_escape}"utf-8${symbol_escape}"><title>Events</title>" + SCRIPT
+					+ "</head><body><p>" + this.records + " events</p>");
+			for (final Method method : this.methods.values()) {
+				method.closeStep();
+				if (method.className.isEmpty()) {
+					// events outside of tests
+					if (method.html.length() > 0) {
+						out.write("<h3>" + escape(method.name) + "</h3>" + method.html);
+					}
+					continue;
+				}
+				out.write("<h3 style=${symbol_escape}"" + color(method.status) + "${symbol_escape}">" + escape(method.simpleName())
+						+ (method.configuration ? " (configuration)" : "")
+						+ (method.started > 0 ? " " + this.time.format(new Date(method.started)) : "") + " - " + status(method.status)
+						+ (method.status == UNFINISHED ? "" : String.format(", %.3f s", method.duration / 1000.0)) + "</h3>");
+				out.write(method.html.toString());
+				if (method.error != null && !method.error.isEmpty()) {
+					out.write("<pre class=${symbol_escape}"stackTrace${symbol_escape}">" + escape(method.error) + "</pre>");
+				}
+			}
+			out.write("</body></html>");
+		}
+	}
+
+	private void writeJUnit(final File file) throws IOException {
+		int tests = 0;
+		int failures = 0;
+		int errors = 0;
+		int skipped = 0;
+		long duration = 0;
+		final StringBuilder cases = new StringBuilder();
+		for (final Method method : this.methods.values()) {
+			if (method.configuration) {
+				continue;
+			}
+			tests++;
+			duration += method.duration;
+			cases.append("  <testcase classname=${symbol_escape}"").append(escape(method.className)).append("${symbol_escape}" name=${symbol_escape}"")
+				.append(escape(method.name)).append("${symbol_escape}" time=${symbol_escape}"")
+				.append(String.format("%.3f", method.duration / 1000.0)).append("${symbol_escape}">");
+			switch (method.status) {
+				case ITestResult.SUCCESS:
+					break;
+				case ITestResult.SKIP:
+					skipped++;
+					cases.append("<skipped/>");
+					break;
+				case UNFINISHED:
+					errors++;
+					cases.append("<error message=${symbol_escape}"Method is not finished${symbol_escape}"/>");
+					break;
+				default:
+					failures++;
+					cases.append("<failure message=${symbol_escape}"").append(escape(method.error == null ? "" : method.error))
+						.append("${symbol_escape}"/>");
+			}
+			if (method.output.length() > 0) {
+				cases.append("<system-out>").append(escape(method.output.toString())).append("</system-out>");
+			}
+			cases.append("</testcase>${symbol_escape}n");
+		}
+		try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			out.write("<?xml version=${symbol_escape}"1.0${symbol_escape}" encoding=${symbol_escape}"UTF-8${symbol_escape}"?>${symbol_escape}n");
+			out.write(String.format("<testsuite name=${symbol_escape}"events${symbol_escape}" tests=${symbol_escape}"%d${symbol_escape}" failures=${symbol_escape}"%d${symbol_escape}""
+					+ " errors=${symbol_escape}"%d${symbol_escape}" skipped=${symbol_escape}"%d${symbol_escape}" time=${symbol_escape}"%.3f${symbol_escape}">${symbol_escape}n",
+					tests, failures, errors, skipped, duration / 1000.0));
+			out.write(cases.toString());
+			out.write("</testsuite>${symbol_escape}n");
+		}
+	}
+
+	private static String color(final int status) {
+		switch (status) {
+			case ITestResult.SUCCESS:
+				return ReportColor.PASSED.getColor();
+			case ITestResult.SKIP:
+				return ReportColor.WARNING.getColor();
+			default:
+				return ReportColor.FAILED.getColor();
+		}
+	}
+
+	private static String status(final int status) {
+		switch (status) {
+			case ITestResult.SUCCESS:
+				return "Passed";
+			case ITestResult.SKIP:
+				return "Skipped";
+			case UNFINISHED:
+				return "Unfinished";
+			default:
+				return "Failed";
+		}
+	}
+
+	private static String escape(final String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("${symbol_escape}"", "&quot;");
+	}
+
+	/**
+	 * Events of test or configuration method.
+	 */
+	private static final class Method {
+		private final String className;
+		private final String name;
+		private final boolean configuration;
+		private final long started;
+		private final StringBuilder html = new StringBuilder();
+		private final StringBuilder output = new StringBuilder();
+		private int status = UNFINISHED;
+		private long duration;
+		private String error;
+		private boolean stepOpen;
+
+		private Method(final String className, final String name, final boolean configuration, final long started) {
+			this.className = className;
+			this.name = name;
+			this.configuration = configuration;
+			this.started = started;
+		}
+
+		private void closeStep() {
+			if (this.stepOpen) {
+				this.html.append("</div>");
+				this.stepOpen = false;
+			}
+		}
+
+		private String simpleName() {
+			if (this.className.isEmpty()) {
+				return this.name;
+			}
+			return this.className.substring(this.className.lastIndexOf('.') + 1) + "." + this.name;
+		}
+	}
+}
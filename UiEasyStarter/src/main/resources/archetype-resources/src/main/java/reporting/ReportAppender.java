@@ -4,6 +4,13 @@
 package reporting;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.testng.ITestResult;
 import org.testng.Reporter;
@@ -15,12 +22,44 @@ import ch.qos.logback.core.AppenderBase;
 
 /**
  * Write test reports.
+ * In async mode events are passed through bounded ring buffer to single consumer thread,
+ * that decorates them and writes to TestNG Reporter in batches.
  * @author gsikorskiy
  *
  */
 public class ReportAppender extends AppenderBase<ILoggingEvent> {
 
+	/**
+	 * What to do with event, when buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Logging event is lost, dropped events are counted. Html of report structure is never dropped.
+		 */
+		DROP,
+		/**
+		 * Logging thread waits for free slot.
+		 */
+		BLOCK
+	}
+
+	private static final int DEFAULT_BUFFER_SIZE = 1024;
+	private static final int DEFAULT_BATCH_SIZE = 64;
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final Set<ReportAppender> ASYNC_APPENDERS = new CopyOnWriteArraySet<>();
+
 	private PatternLayoutEncoder encoder;
+	private boolean async;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Map<ITestResult, Integer> pending = new ConcurrentHashMap<>();
+	private RingBuffer<Entry> buffer;
+	private Thread consumer;
 
 	@Override
 	public final void start() {
@@ -35,21 +74,140 @@ public class ReportAppender extends AppenderBase<ILoggingEvent> {
 			e.printStackTrace();
 		}
 		super.start();
+		if (this.async) {
+			this.buffer = new RingBuffer<>(this.bufferSize);
+			this.consumer = new Thread(this::consume, "report-appender-" + name);
+			this.consumer.setDaemon(true);
+			this.consumer.start();
+			ASYNC_APPENDERS.add(this);
+		}
 	}
 
 	@Override
-	protected final void append(final ILoggingEvent event) {
-		String body = this.encoder.getLayout().doLayout(event);
-		if (body.contains("http:") || body.contains("https:")) {
-			body = decorateLink(body);
+	public final void stop() {
+		super.stop();
+		if (this.consumer != null) {
+			ASYNC_APPENDERS.remove(this);
+			try {
+				this.consumer.join(TimeUnit.SECONDS.toMillis(1));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.dropped.get() > 0) {
+				addWarn("Appender [" + name + "] dropped " + this.dropped.get() + " events.");
+			}
 		}
+	}
 
-		if (event.getLevel() == Level.WARN) {
-			body = decorateWarn(body);
-			ITestResult tr = Reporter.getCurrentTestResult();
+	@Override
+	protected final void append(final ILoggingEvent event) {
+		if (EventLog.isEnabled()) {
+			EventLog.log(event.getLevel().toInt(), event.getFormattedMessage());
+		}
+		final ITestResult tr = Reporter.getCurrentTestResult();
+		if (event.getLevel() == Level.WARN && tr != null) {
 			tr.setAttribute("warning", true);
 		}
-		Reporter.log(body + "<br />");
+		if (!this.async) {
+			log(tr, this.format(event));
+			return;
+		}
+		event.prepareForDeferredProcessing();
+		this.enqueue(new Entry(event, null, tr));
+	}
+
+	/**
+	 * Writes html to report. In async mode html is queued after already logged events,
+	 * so order of lines in report is kept.
+	 * @param html - text to write.
+	 */
+	static void write(final String html) {
+		final ITestResult tr = Reporter.getCurrentTestResult();
+		for (final ReportAppender appender : ASYNC_APPENDERS) {
+			if (appender.isStarted()) {
+				appender.enqueue(new Entry(null, html, tr));
+				return;
+			}
+		}
+		log(tr, html);
+	}
+
+	/**
+	 * Writes html to output of test result: to streaming report if it is open, otherwise to TestNG Reporter.
+	 */
+	private static void log(final ITestResult result, final String html) {
+		if (StreamingReport.write(result, html)) {
+			return;
+		}
+		if (result == Reporter.getCurrentTestResult()) {
+			Reporter.log(html);
+			return;
+		}
+		Reporter.setCurrentTestResult(result);
+		Reporter.log(html);
+		Reporter.setCurrentTestResult(null);
+	}
+
+	/**
+	 * Only logging events can be dropped, html of report structure (steps, screenshots) waits for free slot,
+	 * otherwise report would get unclosed tags.
+	 */
+	private void enqueue(final Entry entry) {
+		final boolean droppable = entry.html == null;
+		// entry is counted before it is offered, so consumer can't uncount it first
+		this.track(entry.result, 1);
+		while (!this.buffer.offer(entry)) {
+			// stopped or died consumer never frees buffer, so entry is written by caller
+			if (!isStarted() || !this.consumer.isAlive()) {
+				this.track(entry.result, -1);
+				if (droppable) {
+					this.dropped.incrementAndGet();
+				} else {
+					log(entry.result, entry.html);
+				}
+				return;
+			}
+			if (droppable && this.overflowPolicy == OverflowPolicy.DROP) {
+				this.track(entry.result, -1);
+				this.dropped.incrementAndGet();
+				return;
+			}
+			LockSupport.parkNanos(IDLE_NANOS);
+		}
+		this.accepted.incrementAndGet();
+	}
+
+	/**
+	 * Waits until all async appenders write accepted events to report.
+	 */
+	public static void flushAll() {
+		for (final ReportAppender appender : ASYNC_APPENDERS) {
+			final long target = appender.accepted.get();
+			while (appender.written.get() < target && appender.consumer.isAlive()) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Waits until all async appenders write accepted events of test to report. Events of other tests are not waited.
+	 * @param result - test, that logged events.
+	 */
+	public static void flush(final ITestResult result) {
+		for (final ReportAppender appender : ASYNC_APPENDERS) {
+			while (appender.pending.containsKey(result) && appender.consumer.isAlive()) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Counts entries of test, that are not written yet. Test without entries is removed from map.
+	 */
+	private void track(final ITestResult result, final int delta) {
+		if (result != null) {
+			this.pending.merge(result, delta, (count, change) -> count + change == 0 ? null : count + change);
+		}
 	}
 
 	/**
@@ -68,12 +226,87 @@ public class ReportAppender extends AppenderBase<ILoggingEvent> {
 		this.encoder = encoder;
 	}
 
+	/**
+	 * Enables async mode. Disabled by default.
+	 * @param async - true to write report in background thread.
+	 */
+	public final void setAsync(final boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Setter for size of ring buffer in async mode.
+	 * @param bufferSize - amount of events, rounded up to power of two.
+	 */
+	public final void setBufferSize(final int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Setter for max amount of events, written to report at once.
+	 * @param batchSize - amount of events.
+	 */
+	public final void setBatchSize(final int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Setter for policy, used when ring buffer is full.
+	 * @param overflowPolicy - DROP or BLOCK.
+	 */
+	public final void setOverflowPolicy(final String overflowPolicy) {
+		this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase());
+	}
+
+	/**
+	 * @return amount of events, dropped because of full buffer.
+	 */
+	public final long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	private void consume() {
+		final StringBuilder batch = new StringBuilder();
+		while (isStarted() || !this.buffer.isEmpty()) {
+			Entry entry = this.buffer.poll();
+			if (entry == null) {
+				LockSupport.parkNanos(IDLE_NANOS);
+				continue;
+			}
+			int count = 0;
+			while (entry != null) {
+				final ITestResult result = entry.result;
+				final int first = count;
+				batch.setLength(0);
+				do {
+					batch.append(entry.html != null ? entry.html : this.format(entry.event));
+					count++;
+					entry = count < this.batchSize ? this.buffer.poll() : null;
+				} while (entry != null && entry.result == result);
+				log(result, batch.toString());
+				this.track(result, first - count);
+			}
+			this.written.addAndGet(count);
+		}
+	}
+
+	private String format(final ILoggingEvent event) {
+		String body = this.encoder.getLayout().doLayout(event);
+		if (body.contains("http:") || body.contains("https:")) {
+			body = decorateLink(body);
+		}
+		if (event.getLevel() == Level.WARN) {
+			body = decorateWarn(body);
+		}
+		return body + "<br />";
+	}
+
 	/**
 	 * Method to add appropriate html tags to links in the report.
 	 * @param text - message to search link
 	 * @return - complete element tag with text
 	 */
-	private static String decorateLink(final String text) {
+	static String decorateLink(final String text) {
 		int httpIndex = text.indexOf("http");
 		String[] delimiters = {" ", ","};
 		int endIndex = -1;
@@ -108,4 +341,19 @@ public class ReportAppender extends AppenderBase<ILoggingEvent> {
 		decoratedWarn.append("</div>");
 		return decoratedWarn.toString();
 	}
+
+	/**
+	 * Logging event or ready html with test result it belongs to.
+	 */
+	private static final class Entry {
+		private final ILoggingEvent event;
+		private final String html;
+		private final ITestResult result;
+
+		private Entry(final ILoggingEvent event, final String html, final ITestResult result) {
+			this.event = event;
+			this.html = html;
+			this.result = result;
+		}
+	}
 }
@@ -20,7 +20,15 @@ public enum ReportColor {
 	/**
 	 * Background color orange.
 	 */
-	WARNING("background-color: ${symbol_pound}F99654");
+	WARNING("background-color: ${symbol_pound}F99654"),
+	/**
+	 * Background color green.
+	 */
+	PASSED("background-color: ${symbol_pound}A8E6A1"),
+	/**
+	 * Background color red.
+	 */
+	FAILED("background-color: ${symbol_pound}F28B82");
 
 	private String color;
 	ReportColor(final String color) {
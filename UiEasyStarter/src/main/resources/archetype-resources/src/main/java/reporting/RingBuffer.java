@@ -0,0 +1,73 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and one consumer.
+ * @param <E> - type of elements.
+ * @author gsikorskiy
+ *
+ */
+final class RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	private final int capacity;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Creates buffer. Capacity is rounded up to power of two.
+	 * @param size - minimal capacity.
+	 */
+	RingBuffer(final int size) {
+		this.capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.slots = new AtomicReferenceArray<>(this.capacity);
+	}
+
+	/**
+	 * Adds element, if buffer has free slot. Can be called from any thread.
+	 * @param element - element to add.
+	 * @return false if buffer is full.
+	 */
+	boolean offer(final E element) {
+		while (true) {
+			final long current = this.tail.get();
+			if (current - this.head.get() >= this.capacity) {
+				return false;
+			}
+			if (this.tail.compareAndSet(current, current + 1)) {
+				this.slots.lazySet((int) current & this.mask, element);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes the oldest element. Should be called only from consumer thread.
+	 * @return element or null if nothing is published yet.
+	 */
+	E poll() {
+		final long current = this.head.get();
+		final int index = (int) current & this.mask;
+		final E element = this.slots.get(index);
+		if (element == null) {
+			return null;
+		}
+		this.slots.lazySet(index, null);
+		this.head.lazySet(current + 1);
+		return element;
+	}
+
+	/**
+	 * @return true if all added elements are consumed.
+	 */
+	boolean isEmpty() {
+		return this.head.get() == this.tail.get();
+	}
+}
@@ -0,0 +1,345 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+import org.testng.Reporter;
+
+import common.Environment;
+import common.PngRowReader;
+import common.PngStripWriter;
+
+/**
+ * Captures screenshots for report. Test thread only takes picture from driver and measures element,
+ * cropping, downscaling and PNG encoding with -Dpng.compression level are done in background threads.
+ * What is captured is set by -Dscreenshot.mode. Pictures are read and written row by row,
+ * so big screenshots are not decoded to memory completely.
+ * @author gsikorskiy
+ *
+ */
+public final class ScreenshotCapture {
+
+	/**
+	 * What is captured.
+	 */
+	public enum Mode {
+		/**
+		 * Whole picture from driver.
+		 */
+		FULL,
+		/**
+		 * Only element under test, whole picture if there is no element.
+		 */
+		ELEMENT,
+		/**
+		 * Whole picture and its downscaled copy, report shows copy with link to whole picture.
+		 */
+		THUMBNAIL
+	}
+
+	/**
+	 * Script scrolls element into viewport if it is outside, and returns its bounds in viewport,
+	 * scroll offsets, size of viewport and device pixel ratio.
+	 */
+	private static final String MEASURE = "var e = arguments[0], r = e.getBoundingClientRect();"
+			+ "if (r.top < 0 || r.bottom > window.innerHeight) { e.scrollIntoView(true); r = e.getBoundingClientRect(); }"
+			+ "return [r.left, r.top, r.width, r.height, window.pageXOffset, window.pageYOffset,"
+			+ " window.innerHeight, window.devicePixelRatio || 1];";
+	private static final int QUEUE_SIZE = 16;
+	private static final int BYTE = 0xFF;
+	private static final int OPAQUE = 0xFF000000;
+	private static final Logger log = LoggerFactory.getLogger(ScreenshotCapture.class);
+	private static final Mode MODE = Mode.valueOf(Environment.SCREENSHOT_MODE.toUpperCase());
+	private static final ThreadLocal<WebElement> FOCUS = new ThreadLocal<>();
+	private static final Queue<Pending> PENDING = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger THREADS = new AtomicInteger();
+	private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+			0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+			r -> {
+				final Thread thread = new Thread(r, "screenshot-encoder-" + THREADS.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			},
+			new ThreadPoolExecutor.CallerRunsPolicy());
+
+	private ScreenshotCapture() { }
+
+	/**
+	 * Sets element under test of current thread. It is captured, if test fails with -Dscreenshot.mode=element.
+	 * @param element - element under test, or null to capture whole picture.
+	 */
+	public static void focus(final WebElement element) {
+		if (element == null) {
+			FOCUS.remove();
+		} else {
+			FOCUS.set(element);
+		}
+	}
+
+	/**
+	 * @return element under test of current thread, or null.
+	 */
+	public static WebElement getFocus() {
+		return FOCUS.get();
+	}
+
+	/**
+	 * Takes screenshot and adds it to report of current test. Picture is encoded and stored in background.
+	 * @param driver - driver to take screenshot.
+	 * @param element - element to capture in element mode, or null.
+	 * @param description - description of screenshot in report.
+	 */
+	public static void capture(final WebDriver driver, final WebElement element, final String description) {
+		final Area area = MODE == Mode.ELEMENT ? measure(driver, element) : null;
+		final byte[] picture = take(driver);
+		if (picture == null) {
+			return;
+		}
+		final ITestResult result = Reporter.getCurrentTestResult();
+		PENDING.add(new Pending(result, EXECUTOR.submit(() -> {
+			// report lines and event log are written to test, that took screenshot,
+			// task can be run by the same thread, when queue is full
+			final ITestResult previous = Reporter.getCurrentTestResult();
+			Reporter.setCurrentTestResult(result);
+			try {
+				store(picture, area, description);
+				return null;
+			} finally {
+				Reporter.setCurrentTestResult(previous);
+			}
+		})));
+	}
+
+	/**
+	 * Takes screenshot and writes it to file at once.
+	 * @param driver - driver to take screenshot.
+	 * @param element - element to capture, or null for whole picture.
+	 * @param target - file to write.
+	 * @return target.
+	 * @throws IOException - if file can't be written.
+	 */
+	public static File save(final WebDriver driver, final WebElement element, final File target) throws IOException {
+		final Area area = element == null ? null : measure(driver, element);
+		final byte[] picture = take(driver);
+		if (picture == null) {
+			throw new IOException("Driver can't take screenshot.");
+		}
+		final File folder = target.getAbsoluteFile().getParentFile();
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Cann't create folder " + folder);
+		}
+		Files.write(target.toPath(), area == null && Environment.PNG_COMPRESSION == -1
+				? picture : encode(picture, area, 0));
+		return target;
+	}
+
+	/**
+	 * Waits until all captured screenshots are encoded and added to report.
+	 */
+	public static void flush() {
+		for (Pending pending = PENDING.poll(); pending != null; pending = PENDING.poll()) {
+			if (!await(pending.task)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until screenshots of test are encoded and added to its report. Screenshots of other tests are not waited.
+	 * @param result - test, that took screenshots.
+	 */
+	public static void flush(final ITestResult result) {
+		for (final Pending pending : PENDING) {
+			if (pending.result == result) {
+				if (!await(pending.task)) {
+					return;
+				}
+				PENDING.remove(pending);
+			}
+		}
+	}
+
+	/**
+	 * @return false if waiting thread is interrupted.
+	 */
+	private static boolean await(final Future<?> task) {
+		try {
+			task.get();
+		} catch (final ExecutionException e) {
+			log.error("Screenshot was not captured.", e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	private static byte[] take(final WebDriver driver) {
+		try {
+			return ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+		} catch (final ClassCastException | WebDriverException | UnsupportedOperationException e) {
+			log.warn("Driver can't take screenshot: " + e);
+			return null;
+		}
+	}
+
+	private static Area measure(final WebDriver driver, final WebElement element) {
+		if (element == null || !(driver instanceof JavascriptExecutor)) {
+			return null;
+		}
+		try {
+			final List<?> bounds = (List<?>) ((JavascriptExecutor) driver).executeScript(MEASURE, element);
+			final double[] values = new double[bounds.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = ((Number) bounds.get(i)).doubleValue();
+			}
+			return new Area(values);
+		} catch (final WebDriverException | ClassCastException | NullPointerException e) {
+			log.debug("Cann't measure element, whole screenshot is captured: " + e);
+			return null;
+		}
+	}
+
+	private static void store(final byte[] picture, final Area area, final String description) throws IOException {
+		final byte[] full = area == null && Environment.PNG_COMPRESSION == -1 ? picture : encode(picture, area, 0);
+		final File saved = ScreenshotStore.save(full);
+		if (MODE == Mode.THUMBNAIL) {
+			final File thumbnail = ScreenshotStore.save(encode(picture, null, Environment.SCREENSHOT_THUMBNAIL_WIDTH));
+			CommonReporter.printScreenshot(description, saved, thumbnail);
+		} else {
+			CommonReporter.printScreenshot(description, saved);
+		}
+	}
+
+	/**
+	 * Crops and downscales picture. Width is reduced by integer factor, every pixel of result
+	 * is average of square of source pixels, so only one row of sums is kept in memory.
+	 * @param picture - encoded picture.
+	 * @param area - element to keep, or null for whole picture. Whole picture is kept, if element is outside of it.
+	 * @param maxWidth - max width of result, 0 to keep size.
+	 * @return PNG with -Dpng.compression level.
+	 */
+	private static byte[] encode(final byte[] picture, final Area area, final int maxWidth) throws IOException {
+		try (PngRowReader reader = PngRowReader.open(picture)) {
+			final Rectangle bounds = new Rectangle(reader.getWidth(), reader.getHeight());
+			Rectangle crop = area == null ? bounds : area.toPixels(bounds.height).intersection(bounds);
+			if (crop.isEmpty()) {
+				log.debug("Element is outside of picture " + bounds + ", whole screenshot is captured.");
+				crop = bounds;
+			}
+			final int factor = maxWidth > 0 ? Math.max(1, (crop.width + maxWidth - 1) / maxWidth) : 1;
+			final int width = Math.max(1, crop.width / factor);
+			final int height = Math.max(1, crop.height / factor);
+			final int rows = Math.min(factor, crop.height);
+			final int columns = Math.min(factor, crop.width);
+			final int[] source = new int[reader.getWidth()];
+			final int[] target = new int[width];
+			final int[] sums = new int[width * 3];
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			reader.skipRows(crop.y);
+			try (PngStripWriter writer = new PngStripWriter(out, width, height, Environment.PNG_COMPRESSION)) {
+				for (int j = 0; j < height; j++) {
+					Arrays.fill(sums, 0);
+					for (int k = 0; k < rows; k++) {
+						reader.readRow(source);
+						for (int i = 0, x = crop.x; i < width; i++) {
+							for (int c = 0; c < columns; c++, x++) {
+								final int pixel = source[x];
+								sums[3 * i] += (pixel >>> 16) & BYTE;
+								sums[3 * i + 1] += (pixel >>> 8) & BYTE;
+								sums[3 * i + 2] += pixel & BYTE;
+							}
+						}
+					}
+					final int count = rows * columns;
+					for (int i = 0; i < width; i++) {
+						target[i] = OPAQUE | sums[3 * i] / count << 16 | sums[3 * i + 1] / count << 8
+								| sums[3 * i + 2] / count;
+					}
+					writer.writeRow(target);
+				}
+			}
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Background task with test it belongs to.
+	 */
+	private static final class Pending {
+		private final ITestResult result;
+		private final Future<?> task;
+
+		private Pending(final ITestResult result, final Future<?> task) {
+			this.result = result;
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Values, returned by measure script.
+	 */
+	private static final class Area {
+		private final double left;
+		private final double top;
+		private final double width;
+		private final double height;
+		private final double scrollX;
+		private final double scrollY;
+		private final double viewportHeight;
+		private final double ratio;
+
+		private Area(final double[] values) {
+			this.left = values[0];
+			this.top = values[1];
+			this.width = values[2];
+			this.height = values[3];
+			this.scrollX = values[4];
+			this.scrollY = values[5];
+			this.viewportHeight = values[6];
+			this.ratio = values[7];
+		}
+
+		/**
+		 * Bounds of element in device pixels. Picture is taken either of viewport or of whole page,
+		 * page coordinates are used, if picture is higher than viewport.
+		 * @param pictureHeight - height of picture.
+		 * @return bounds, that can be outside of picture.
+		 */
+		private Rectangle toPixels(final int pictureHeight) {
+			final boolean page = pictureHeight > Math.ceil(this.viewportHeight * this.ratio) + 1;
+			final double x = (this.left + (page ? this.scrollX : 0)) * this.ratio;
+			final double y = (this.top + (page ? this.scrollY : 0)) * this.ratio;
+			final int fromX = (int) Math.floor(x);
+			final int fromY = (int) Math.floor(y);
+			return new Rectangle(fromX, fromY, (int) Math.ceil(x + this.width * this.ratio) - fromX,
+					(int) Math.ceil(y + this.height * this.ratio) - fromY);
+		}
+	}
+}
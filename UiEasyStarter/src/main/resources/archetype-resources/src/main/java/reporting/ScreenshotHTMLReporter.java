@@ -4,21 +4,24 @@
 package reporting;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.List;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.velocity.VelocityContext;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.internal.WrapsDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.ISuite;
 import org.testng.ITestContext;
 import org.testng.ITestResult;
 import org.testng.internal.IResultListener;
+import org.testng.xml.XmlSuite;
 import org.uncommons.reportng.HTMLReporter;
 
+import webdriver.DriverMetrics;
+import webdriver.NetworkProxy;
 import webdriver.WebDriverFactory;
+import webdriver.WebDriverStorage;
 
 import common.Environment;
 
@@ -42,92 +45,125 @@ public class ScreenshotHTMLReporter extends HTMLReporter implements	IResultListe
 		return context;
 	}
 
+	@Override
+	public void generateReport(final List<XmlSuite> xmlSuites, final List<ISuite> suites,
+			final String outputDirectoryName) {
+		ScreenshotCapture.flush();
+		ReportAppender.flushAll();
+		if (!Environment.STREAMING_REPORT) {
+			super.generateReport(xmlSuites, suites, outputDirectoryName);
+		}
+		ScreenshotWriter.flush();
+		ScreenshotStore.evict();
+		DriverMetrics.writeReport(new File(outputDirectoryName, "html"));
+		BrowserResults.writeReport(new File(outputDirectoryName, "html"));
+		NetworkProxy.writeReport(new File(outputDirectoryName, "html"));
+		StreamingReport.close();
+		EventLog.flush();
+	}
+
 	@Override
 	public final void onTestFailure(final ITestResult result) {
 		if (Environment.MAKE_SCREENSHOT) {
 			this.log.debug("Make screenshot on test failure.");
 			this.makeScreenshot(result);
 		}
+		BrowserResults.record(result);
+		this.finish(result);
 	}
 
 	@Override
 	public void onTestStart(final ITestResult result) {
+		EventLog.testStarted(result);
 	}
 
 	@Override
 	public void onTestSuccess(final ITestResult result) {
+		BrowserResults.record(result);
+		this.finish(result);
 	}
 
 	@Override
 	public void onTestSkipped(final ITestResult result) {
+		BrowserResults.record(result);
+		this.finish(result);
 	}
 
 	@Override
 	public void onTestFailedButWithinSuccessPercentage(final ITestResult result) {
+		BrowserResults.record(result);
+		this.finish(result);
 	}
 
 	@Override
 	public void onStart(final ITestContext context) {
+		if (Environment.STREAMING_REPORT) {
+			StreamingReport.open(new File(new File(context.getSuite().getOutputDirectory()).getParentFile(), "html"));
+		}
 	}
 
 	@Override
 	public void onFinish(final ITestContext context) {
+		ScreenshotCapture.flush();
+		ScreenshotWriter.flush();
+		ReportAppender.flushAll();
 	}
 
 	@Override
 	public void onConfigurationSuccess(final ITestResult result) {
+		this.finish(result);
 	}
 
 	@Override
 	public void onConfigurationFailure(final ITestResult result) {
+		this.finish(result);
 	}
 
 	@Override
 	public void onConfigurationSkip(final ITestResult result) {
+		this.finish(result);
 	}
 
-	private void makeScreenshot(final ITestResult tr) {
-		final String outputDir = this.compileScreenshotFolder(tr);
-		this.log.debug("Screenshot will be saved in " + outputDir);
-
-		final WebDriver driver = (WebDriver) tr.getTestContext()
-				.getAttribute(WebDriverFactory.DRIVER_ATTRIBUTE_NAME);
-		final String fileName = this.compileScreenshotName(tr, driver).replace(" ", "_");
-
-		try {
-			final File f = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-			final File saved = new File(outputDir, fileName);
-			FileUtils.copyFile(f, saved);
-			CommonReporter.printScreenshot("Screenshot for " + tr.getName() + " "
-					+ driver.getCurrentUrl(), saved);
-		} catch (final IOException e) {
-			this.log.error("Cann't copy screenshot to target folder.");
-			e.printStackTrace();
+	/**
+	 * Forgets element under test, writes result of finished method to event log and its output to streaming report.
+	 * Screenshots and async appenders are flushed first, so all output of the method is written.
+	 */
+	private void finish(final ITestResult result) {
+		ScreenshotCapture.focus(null);
+		EventLog.testFinished(result);
+		if (StreamingReport.isOpen()) {
+			// other tests keep logging in parallel, so only output of this test is waited
+			ScreenshotCapture.flush(result);
+			ReportAppender.flush(result);
+			StreamingReport.finish(result);
 		}
 	}
 
-	private String compileScreenshotFolder(final ITestResult tr) {
-		final StringBuilder dir = new StringBuilder();
-		dir.append(Environment.SCREENSHOT_PATH + "/");
-		dir.append(tr.getTestContext().getName() + "/");
-		return dir.toString();
-	}
+	private void makeScreenshot(final ITestResult tr) {
+		// listener is called in thread of test method, so driver of browser matrix is used if it is bound,
+		// browser, that was not started by test, is not started for screenshot
+		final WebDriver driver = WebDriverStorage.getBrowser() != null ? WebDriverStorage.peekDriver()
+				: (WebDriver) tr.getTestContext().getAttribute(WebDriverFactory.DRIVER_ATTRIBUTE_NAME);
+		if (driver == null) {
+			this.log.info("No started driver to make screenshot for " + tr.getName());
+			return;
+		}
 
-	private String compileScreenshotName(final ITestResult tr, final WebDriver driver) {
-		final StringBuilder fileName = new StringBuilder();
-		//TODO Enable when screenshots should be unique
-//		final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss");
-//		final String timestamp = dateFormatter.format(new Date());
-//		fileName.append(timestamp + " ");
-		fileName.append(tr.getMethod().getMethodName() + " ");
-		fileName.append(this.extractBrowserName(driver));
-		fileName.append(FILE_EXTENSION);
-		return fileName.toString();
+		ScreenshotCapture.capture(driver, ScreenshotCapture.getFocus(), "Screenshot for " + tr.getName() + " "
+				+ this.extractBrowserName(driver) + " " + driver.getCurrentUrl());
 	}
 
-	private String extractBrowserName(final WebDriver driver) {
+	private String extractBrowserName(final WebDriver wrapped) {
+		WebDriver driver = wrapped;
+		while (driver instanceof WrapsDriver) {
+			driver = ((WrapsDriver) driver).getWrappedDriver();
+		}
 		final int beginIndex = driver.toString().indexOf(":") + 1;
 		final int endIndex = driver.toString().indexOf("(");
+		if (endIndex < beginIndex) {
+			// only RemoteWebDriver describes its capabilities
+			return driver.getClass().getSimpleName();
+		}
 		final String browser = driver.toString().substring(beginIndex, endIndex);
 		return browser;
 	}
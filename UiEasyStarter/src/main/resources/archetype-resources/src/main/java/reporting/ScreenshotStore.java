@@ -0,0 +1,139 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.Environment;
+import common.PictureStreams;
+
+/**
+ * Content-addressed storage of screenshots. Screenshot is named by md5 of its pixels,
+ * so the same picture is written only once for all tests, retries, browsers and runs.
+ * Reused screenshot is touched, and the least recently used ones are removed,
+ * when store exceeds -Dscreenshot.store.size megabytes.
+ * @author gsikorskiy
+ *
+ */
+public final class ScreenshotStore {
+
+	private static final Logger log = LoggerFactory.getLogger(ScreenshotStore.class);
+	private static final long MEGABYTE = 1024 * 1024;
+	private static final int FAN_OUT = 2;
+	private static final Set<String> STORED = ConcurrentHashMap.newKeySet();
+	private static final long STARTED = System.currentTimeMillis();
+
+	private ScreenshotStore() { }
+
+	/**
+	 * Stores screenshot. File is written in background, if store doesn't contain it yet.
+	 * @param picture - encoded picture.
+	 * @return file, that will contain the picture.
+	 */
+	public static File save(final byte[] picture) {
+		final String hash = hash(picture);
+		final File file = Paths.get(Environment.SCREENSHOT_STORE, hash.substring(0, FAN_OUT),
+				hash + ScreenshotHTMLReporter.FILE_EXTENSION).toFile();
+		if (STORED.add(hash)) {
+			if (file.isFile()) {
+				if (!file.setLastModified(System.currentTimeMillis())) {
+					log.debug("Cann't touch screenshot " + file);
+				}
+			} else {
+				ScreenshotWriter.write(picture, file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Removes the least recently used screenshots, until store fits -Dscreenshot.store.size.
+	 * Screenshots, used by current run, are kept.
+	 */
+	public static void evict() {
+		final Path root = Paths.get(Environment.SCREENSHOT_STORE);
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		final List<Path> files;
+		try (Stream<Path> walk = Files.walk(root, FAN_OUT)) {
+			files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		} catch (final IOException e) {
+			log.error("Cann't list screenshot store " + root, e);
+			return;
+		}
+		final List<Stored> stored = new ArrayList<>(files.size());
+		long total = 0;
+		for (final Path file : files) {
+			try {
+				final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				stored.add(new Stored(file, attributes.size(), attributes.lastModifiedTime()));
+				total += attributes.size();
+			} catch (final IOException e) {
+				log.debug("Cann't read attributes of " + file + ": " + e);
+			}
+		}
+		final long limit = Environment.SCREENSHOT_STORE_SIZE * MEGABYTE;
+		stored.sort(Comparator.comparing(item -> item.modified));
+		for (final Stored item : stored) {
+			if (total <= limit || item.modified.toMillis() >= STARTED) {
+				break;
+			}
+			try {
+				Files.deleteIfExists(item.path);
+				total -= item.size;
+			} catch (final IOException e) {
+				log.debug("Cann't remove screenshot " + item.path + ": " + e);
+			}
+		}
+		if (total > limit) {
+			log.info("Screenshot store " + root + " takes " + total / MEGABYTE
+					+ " MB, screenshots of current run are kept.");
+		}
+	}
+
+	/**
+	 * Hash of pixels, or hash of bytes if picture can't be decoded.
+	 */
+	private static String hash(final byte[] picture) {
+		try {
+			return PictureStreams.hashHex(picture);
+		} catch (final IOException e) {
+			log.debug("Cann't decode screenshot, it is named by hash of bytes: " + e);
+			return DigestUtils.md5Hex(picture);
+		}
+	}
+
+	/**
+	 * File in store.
+	 */
+	private static final class Stored {
+		private final Path path;
+		private final long size;
+		private final FileTime modified;
+
+		private Stored(final Path path, final long size, final FileTime modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes screenshots to disk in background thread, so test threads are not blocked by I/O.
+ * Queue is bounded: when it is full, screenshot is written by the calling thread.
+ * @author gsikorskiy
+ *
+ */
+public final class ScreenshotWriter {
+
+	private static final int QUEUE_SIZE = 64;
+	private static final Logger log = LoggerFactory.getLogger(ScreenshotWriter.class);
+	private static final Queue<Future<?>> PENDING = new ConcurrentLinkedQueue<>();
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(1, 1,
+			0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+			r -> {
+				final Thread thread = new Thread(r, "screenshot-writer");
+				thread.setDaemon(true);
+				return thread;
+			},
+			new ThreadPoolExecutor.CallerRunsPolicy());
+
+	private ScreenshotWriter() { }
+
+	/**
+	 * Schedules writing of image bytes to file. Parent folders are created if needed.
+	 * @param data - encoded image.
+	 * @param target - file to write.
+	 */
+	public static void write(final byte[] data, final File target) {
+		PENDING.add(EXECUTOR.submit(() -> writeNow(data, target.toPath())));
+	}
+
+	/**
+	 * Waits until all scheduled screenshots are written.
+	 */
+	public static void flush() {
+		for (Future<?> task = PENDING.poll(); task != null; task = PENDING.poll()) {
+			try {
+				task.get();
+			} catch (final ExecutionException e) {
+				log.error("Screenshot was not written.", e.getCause());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private static void writeNow(final byte[] data, final Path target) {
+		try {
+			Files.createDirectories(target.getParent());
+			try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				final ByteBuffer buffer = ByteBuffer.wrap(data);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		} catch (final IOException e) {
+			log.error("Cann't write screenshot to " + target, e);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package reporting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestResult;
+
+/**
+ * Writes html report while suite is running. Output of every test is kept only until the test is finished,
+ * then it is written to its own page and a row is appended to index.html.
+ * So heap doesn't grow with amount of tests and report can be viewed during the run.
+ * Enabled by -Dreport.streaming, ScreenshotHTMLReporter doesn't render ReportNG report in this mode.
+ * @author gsikorskiy
+ *
+ */
+final class StreamingReport {
+
+	private static final String INDEX_FILE = "index.html";
+	private static final String TESTS_FOLDER = "tests";
+	private static final String STYLESHEET = "report.css";
+	private static final String SCRIPT_FILE = "stream.js";
+	private static final String[] EXTRA_REPORTS = {"browsers.html", "latency.html", "network.html"};
+	private static final String SCRIPT = "function toggleElement(id, display) {"
+			+ " var e = document.getElementById(id);"
+			+ " e.style.display = e.style.display == display ? 'none' : display; }";
+	private static final Logger log = LoggerFactory.getLogger(StreamingReport.class);
+	private static final Map<ITestResult, StringBuilder> OUTPUT = new ConcurrentHashMap<>();
+	private static final AtomicInteger PAGES = new AtomicInteger();
+	private static final int[] TOTALS = new int[ITestResult.STARTED + 1];
+
+	private static volatile File directory;
+	private static volatile Writer index;
+
+	private StreamingReport() { }
+
+	/**
+	 * Creates report folder and starts index. Does nothing if report is already open.
+	 * @param dir - folder of html report.
+	 */
+	static synchronized void open(final File dir) {
+		if (index != null) {
+			return;
+		}
+		try {
+			Files.createDirectories(new File(dir, TESTS_FOLDER).toPath());
+			try (InputStream css = StreamingReport.class.getResourceAsStream("/" + STYLESHEET)) {
+				if (css != null) {
+					Files.copy(css, new File(dir, STYLESHEET).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.write(new File(dir, SCRIPT_FILE).toPath(), SCRIPT.getBytes(StandardCharsets.UTF_8));
+			index = Files.newBufferedWriter(new File(dir, INDEX_FILE).toPath(), StandardCharsets.UTF_8);
+			index.write(head("Test results", ""));
+			index.write("<table class=${symbol_escape}"resultsTable${symbol_escape}">");
+			index.write("<tr class=${symbol_escape}"header${symbol_escape}"><th>${symbol_pound}</th><th>Method</th>"
+					+ "<th>Status</th><th>Duration, s</th><th>Thread</th></tr>${symbol_escape}n");
+			index.flush();
+			directory = dir;
+			Arrays.fill(TOTALS, 0);
+			log.info("Streaming report is written to " + new File(dir, INDEX_FILE).getAbsolutePath());
+		} catch (final IOException e) {
+			log.error("Unable to start streaming report in " + dir, e);
+		}
+	}
+
+	/**
+	 * @return true if report is open, so output should be written here instead of TestNG Reporter.
+	 */
+	static boolean isOpen() {
+		return index != null;
+	}
+
+	/**
+	 * Adds html to output of test. Output outside of tests is written to index at once.
+	 * @param result - test or configuration method, that writes output, or null.
+	 * @param html - output.
+	 * @return false if report is not open.
+	 */
+	static boolean write(final ITestResult result, final String html) {
+		if (!isOpen()) {
+			return false;
+		}
+		if (result == null) {
+			appendToIndex("<tr><td colspan=${symbol_escape}"5${symbol_escape}">" + html + "</td></tr>${symbol_escape}n");
+			return true;
+		}
+		final StringBuilder output = OUTPUT.computeIfAbsent(result, r -> new StringBuilder());
+		synchronized (output) {
+			output.append(html);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes page of finished test or configuration method and adds it to index.
+	 * @param result - finished method.
+	 */
+	static void finish(final ITestResult result) {
+		final StringBuilder output = OUTPUT.remove(result);
+		if (!isOpen()) {
+			return;
+		}
+		final String name = result.getTestClass().getRealClass().getSimpleName() + "." + result.getName()
+				+ parameters(result);
+		final int number = PAGES.incrementAndGet();
+		final String page = String.format("%06d-%s.html", number,
+				result.getName().replaceAll("[^A-Za-z0-9_-]", "_"));
+		final String color = color(result.getStatus());
+		final String duration = String.format("%.3f", (result.getEndMillis() - result.getStartMillis()) / 1000.0);
+
+		final StringBuilder html = new StringBuilder(head(name, "../"));
+		html.append("<h2 style=${symbol_escape}"").append(color).append("${symbol_escape}">").append(escape(name))
+			.append("</h2><p>").append(status(result.getStatus())).append(", ").append(duration).append(" s")
+			.append(result.getMethod().isTest() ? "" : ", configuration").append("</p><div>");
+		if (output != null) {
+			synchronized (output) {
+				html.append(output);
+			}
+		}
+		html.append("</div>");
+		if (result.getThrowable() != null) {
+			final StringWriter trace = new StringWriter();
+			result.getThrowable().printStackTrace(new PrintWriter(trace));
+			html.append("<pre class=${symbol_escape}"stackTrace${symbol_escape}">").append(escape(trace.toString())).append("</pre>");
+		}
+		html.append("</body></html>");
+		try {
+			Files.write(new File(new File(directory, TESTS_FOLDER), page).toPath(),
+					html.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			log.error("Unable to write report of " + name, e);
+		}
+		synchronized (StreamingReport.class) {
+			TOTALS[result.getStatus()]++;
+		}
+		appendToIndex("<tr style=${symbol_escape}"" + color + "${symbol_escape}"><td>" + number + "</td><td><a href=${symbol_escape}""
+				+ TESTS_FOLDER + "/" + page + "${symbol_escape}">" + escape(name) + "</a></td><td>" + status(result.getStatus())
+				+ "</td><td>" + duration + "</td><td>" + escape(Thread.currentThread().getName()) + "</td></tr>${symbol_escape}n");
+	}
+
+	/**
+	 * Writes totals and links to other reports and closes index.
+	 */
+	static synchronized void close() {
+		if (index == null) {
+			return;
+		}
+		try {
+			index.write("</table><p>Passed: " + TOTALS[ITestResult.SUCCESS] + ", failed: " + TOTALS[ITestResult.FAILURE]
+					+ ", skipped: " + TOTALS[ITestResult.SKIP] + "</p><p>");
+			for (final String report : EXTRA_REPORTS) {
+				if (new File(directory, report).exists()) {
+					index.write("<a href=${symbol_escape}"" + report + "${symbol_escape}">" + report + "</a> ");
+				}
+			}
+			index.write("</p></body></html>");
+			index.close();
+		} catch (final IOException e) {
+			log.error("Unable to finish streaming report", e);
+		}
+		index = null;
+		if (!OUTPUT.isEmpty()) {
+			log.warn("Output of " + OUTPUT.size() + " unfinished methods is not written to report.");
+			OUTPUT.clear();
+		}
+	}
+
+	private static synchronized void appendToIndex(final String html) {
+		if (index == null) {
+			return;
+		}
+		try {
+			index.write(html);
+			index.flush();
+		} catch (final IOException e) {
+			log.error("Unable to write to streaming report", e);
+		}
+	}
+
+	private static String head(final String title, final String root) {
+		return "<html><head><meta charset=${symbol_escape}"utf-8${symbol_escape}"><title>" + escape(title) + "</title>"
+				+ "<link rel=${symbol_escape}"stylesheet${symbol_escape}" href=${symbol_escape}"" + root + STYLESHEET + "${symbol_escape}">"
+				+ "<script type=${symbol_escape}"text/javascript${symbol_escape}" src=${symbol_escape}"" + root + SCRIPT_FILE + "${symbol_escape}"></script>"
+				+ "</head><body>";
+	}
+
+	private static String parameters(final ITestResult result) {
+		final Object[] parameters = result.getParameters();
+		return parameters == null || parameters.length == 0 ? "" : Arrays.toString(parameters);
+	}
+
+	private static String color(final int status) {
+		switch (status) {
+			case ITestResult.SUCCESS:
+				return ReportColor.PASSED.getColor();
+			case ITestResult.SKIP:
+				return ReportColor.WARNING.getColor();
+			default:
+				return ReportColor.FAILED.getColor();
+		}
+	}
+
+	private static String status(final int status) {
+		switch (status) {
+			case ITestResult.SUCCESS:
+				return "Passed";
+			case ITestResult.SKIP:
+				return "Skipped";
+			default:
+				return "Failed";
+		}
+	}
+
+	private static String escape(final String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+}
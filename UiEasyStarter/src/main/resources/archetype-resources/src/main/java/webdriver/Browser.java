@@ -3,6 +3,8 @@
 #set( $symbol_escape = '\' )
 package webdriver;
 
+import java.util.Objects;
+
 /**
  * It represents a browser. It contains name, version and platform fields.
  *
@@ -72,15 +74,15 @@ public class Browser {
 		boolean result = false;
 		if (o != null && o instanceof Browser) {
 			Browser br = (Browser) o;
-			result = (br.getName().equals(this.name)
-					&& br.getPlatform().equals(platform)
-					&& br.getVersion().equals(version));
+			result = (Objects.equals(br.getName(), this.name)
+					&& Objects.equals(br.getPlatform(), platform)
+					&& Objects.equals(br.getVersion(), version));
 		}
 		return result;
 	}
 
 	@Override
 	public final int hashCode() {
-		return super.hashCode();
+		return Objects.hash(name, version, platform);
 	}
 }
@@ -0,0 +1,251 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.events.AbstractWebDriverEventListener;
+import org.openqa.selenium.support.events.EventFiringWebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.Environment;
+
+/**
+ * Collects latencies of WebDriver commands per browser, page and command.
+ * Drivers are instrumented only if -Ddriver.metrics=true.
+ * @author gsikorskiy
+ *
+ */
+public final class DriverMetrics {
+
+	/**
+	 * Name of machine-readable report.
+	 */
+	public static final String JSON_FILE = "latency.json";
+
+	/**
+	 * Name of html report.
+	 */
+	public static final String HTML_FILE = "latency.html";
+
+	private static final String NO_PAGE = "-";
+	private static final String SEPARATOR = "|";
+	private static final Logger log = LoggerFactory.getLogger(DriverMetrics.class);
+	private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+	private static final ThreadLocal<String> CURRENT_PAGE = ThreadLocal.withInitial(() -> NO_PAGE);
+
+	private DriverMetrics() { }
+
+	/**
+	 * Wraps driver to measure its commands.
+	 * @param driver - driver to wrap.
+	 * @param browser - name of browser in report.
+	 * @return instrumented driver, or the same driver if metrics are disabled.
+	 */
+	public static WebDriver instrument(final WebDriver driver, final String browser) {
+		if (!Environment.DRIVER_METRICS) {
+			return driver;
+		}
+		return new EventFiringWebDriver(driver).register(new Listener(browser));
+	}
+
+	/**
+	 * Sets page object, that is used by current thread. Following commands are assigned to it.
+	 * @param page - page object class.
+	 */
+	public static void setCurrentPage(final Class<?> page) {
+		CURRENT_PAGE.set(page.getSimpleName());
+	}
+
+	/**
+	 * Adds latency of command.
+	 * @param browser - name of browser.
+	 * @param command - name of command.
+	 * @param nanos - latency.
+	 */
+	public static void record(final String browser, final String command, final long nanos) {
+		if (!Environment.DRIVER_METRICS) {
+			return;
+		}
+		final String key = browser + SEPARATOR + CURRENT_PAGE.get() + SEPARATOR + command;
+		HISTOGRAMS.computeIfAbsent(key, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Writes latency.json and latency.html to folder.
+	 * @param dir - report folder.
+	 */
+	public static void writeReport(final File dir) {
+		if (HISTOGRAMS.isEmpty()) {
+			return;
+		}
+		final Map<String, LatencyHistogram> sorted = new TreeMap<>(HISTOGRAMS);
+		final StringBuilder json = new StringBuilder("[");
+		final StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>WebDriver latency</title></head><body><table border=${symbol_escape}"1${symbol_escape}">");
+		html.append("<tr><th>Browser</th><th>Page</th><th>Command</th><th>Count</th>");
+		html.append("<th>p50, ms</th><th>p90, ms</th><th>p99, ms</th><th>Max, ms</th><th>Total, ms</th></tr>");
+		for (final Map.Entry<String, LatencyHistogram> entry : sorted.entrySet()) {
+			final String[] key = entry.getKey().split("${symbol_escape}${symbol_escape}" + SEPARATOR);
+			final LatencyHistogram histogram = entry.getValue();
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append("${symbol_escape}n  {${symbol_escape}"browser${symbol_escape}": ${symbol_escape}"").append(key[0])
+				.append("${symbol_escape}", ${symbol_escape}"page${symbol_escape}": ${symbol_escape}"").append(key[1])
+				.append("${symbol_escape}", ${symbol_escape}"command${symbol_escape}": ${symbol_escape}"").append(key[2])
+				.append("${symbol_escape}", ${symbol_escape}"count${symbol_escape}": ").append(histogram.getCount())
+				.append(", ${symbol_escape}"p50Micros${symbol_escape}": ").append(histogram.getPercentile(50))
+				.append(", ${symbol_escape}"p90Micros${symbol_escape}": ").append(histogram.getPercentile(90))
+				.append(", ${symbol_escape}"p99Micros${symbol_escape}": ").append(histogram.getPercentile(99))
+				.append(", ${symbol_escape}"maxMicros${symbol_escape}": ").append(histogram.getMax())
+				.append(", ${symbol_escape}"totalMicros${symbol_escape}": ").append(histogram.getTotal())
+				.append('}');
+			html.append("<tr><td>").append(key[0]).append("</td><td>").append(key[1])
+				.append("</td><td>").append(key[2]).append("</td><td>").append(histogram.getCount())
+				.append("</td><td>").append(millis(histogram.getPercentile(50)))
+				.append("</td><td>").append(millis(histogram.getPercentile(90)))
+				.append("</td><td>").append(millis(histogram.getPercentile(99)))
+				.append("</td><td>").append(millis(histogram.getMax()))
+				.append("</td><td>").append(millis(histogram.getTotal())).append("</td></tr>");
+		}
+		json.append("${symbol_escape}n]${symbol_escape}n");
+		html.append("</table></body></html>");
+		try {
+			Files.createDirectories(dir.toPath());
+			Files.write(new File(dir, JSON_FILE).toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+			Files.write(new File(dir, HTML_FILE).toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			log.error("Unable to write latency report to " + dir, e);
+		}
+	}
+
+	private static String millis(final long micros) {
+		return String.format("%.1f", micros / 1000.0);
+	}
+
+	/**
+	 * Measures commands of one driver.
+	 */
+	private static final class Listener extends AbstractWebDriverEventListener {
+
+		private final String browser;
+		private String command;
+		private long start;
+
+		private Listener(final String browser) {
+			this.browser = browser;
+		}
+
+		private void begin(final String name) {
+			this.command = name;
+			this.start = System.nanoTime();
+		}
+
+		private void end() {
+			if (this.command != null) {
+				record(this.browser, this.command, System.nanoTime() - this.start);
+				this.command = null;
+			}
+		}
+
+		@Override
+		public void beforeNavigateTo(final String url, final WebDriver driver) {
+			this.begin("navigate");
+		}
+
+		@Override
+		public void afterNavigateTo(final String url, final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeNavigateBack(final WebDriver driver) {
+			this.begin("back");
+		}
+
+		@Override
+		public void afterNavigateBack(final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeNavigateForward(final WebDriver driver) {
+			this.begin("forward");
+		}
+
+		@Override
+		public void afterNavigateForward(final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeNavigateRefresh(final WebDriver driver) {
+			this.begin("refresh");
+		}
+
+		@Override
+		public void afterNavigateRefresh(final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeFindBy(final By by, final WebElement element, final WebDriver driver) {
+			this.begin("find");
+		}
+
+		@Override
+		public void afterFindBy(final By by, final WebElement element, final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeClickOn(final WebElement element, final WebDriver driver) {
+			this.begin("click");
+		}
+
+		@Override
+		public void afterClickOn(final WebElement element, final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeChangeValueOf(final WebElement element, final WebDriver driver) {
+			this.begin("changeValue");
+		}
+
+		@Override
+		public void afterChangeValueOf(final WebElement element, final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void beforeScript(final String script, final WebDriver driver) {
+			this.begin("script");
+		}
+
+		@Override
+		public void afterScript(final String script, final WebDriver driver) {
+			this.end();
+		}
+
+		@Override
+		public void onException(final Throwable throwable, final WebDriver driver) {
+			if (this.command != null) {
+				this.command = this.command + " (failed)";
+			}
+			this.end();
+		}
+	}
+}
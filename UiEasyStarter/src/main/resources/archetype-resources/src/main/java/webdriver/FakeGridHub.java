@@ -0,0 +1,375 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.JsonHttpCommandCodec;
+import org.openqa.selenium.remote.http.JsonHttpResponseCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for Grid hub. It implements subset of JSON wire protocol,
+ * that is used by RemoteWebDriver, and answers every command after configured delay.
+ * There is no browser behind it: every locator finds one element, except locators with "missing",
+ * text of element is its locator, element snapshot script returns visible elements with such text
+ * and no attributes, other scripts return null, screenshot is blank picture.
+ * It allows to measure framework overhead under simulated Grid latency without browsers and network.
+ * Start it from test code or by main method and pass its url to -Dgrid.hub option.
+ *
+ * @author gsikorskiy
+ */
+public final class FakeGridHub implements Closeable {
+
+	/**
+	 * Locators with this text are not found.
+	 */
+	public static final String MISSING = "missing";
+
+	private static final String PATH = "/wd/hub";
+	private static final int DEFAULT_PORT = 4444;
+	private static final int BACKLOG = 128;
+	private static final int SCREENSHOT_SIZE = 16;
+	private static final String WINDOW = "main";
+	private static final Logger log = LoggerFactory.getLogger(FakeGridHub.class);
+	private static final String SCREENSHOT = blankScreenshot();
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final JsonHttpCommandCodec commandCodec = new JsonHttpCommandCodec();
+	private final JsonHttpResponseCodec responseCodec = new JsonHttpResponseCodec();
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+	private volatile long defaultLatency;
+
+	static {
+		// without TCP_NODELAY every response waits for delayed ACK of client, it is ~40 ms per command
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private FakeGridHub(final int port) throws IOException {
+		final AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(r -> {
+			final Thread thread = new Thread(r, "fake-grid-hub-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), BACKLOG);
+		this.server.createContext(PATH, this::handle);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	/**
+	 * Starts hub on localhost.
+	 * @param port - port to listen, 0 to take any free port.
+	 * @return started hub.
+	 */
+	public static FakeGridHub start(final int port) {
+		try {
+			final FakeGridHub hub = new FakeGridHub(port);
+			log.info("Fake grid hub is started on " + hub.getUrl());
+			return hub;
+		} catch (final IOException e) {
+			throw new UncheckedIOException("Unable to start fake grid hub on port " + port, e);
+		}
+	}
+
+	/**
+	 * Sets delay of all commands, that don't have own delay.
+	 * @param delay - delay.
+	 * @param unit - time unit of delay.
+	 * @return this hub.
+	 */
+	public FakeGridHub withLatency(final long delay, final TimeUnit unit) {
+		this.defaultLatency = unit.toNanos(delay);
+		return this;
+	}
+
+	/**
+	 * Sets delay of one command.
+	 * @param command - name of command from DriverCommand, e.g. newSession, get, findElement.
+	 * @param delay - delay.
+	 * @param unit - time unit of delay.
+	 * @return this hub.
+	 */
+	public FakeGridHub withLatency(final String command, final long delay, final TimeUnit unit) {
+		this.latencies.put(command, unit.toNanos(delay));
+		return this;
+	}
+
+	/**
+	 * Retrieves url, that should be passed to -Dgrid.hub option.
+	 * @return url of hub.
+	 */
+	public URL getUrl() {
+		try {
+			return new URL("http", "localhost", this.server.getAddress().getPort(), PATH);
+		} catch (final MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Retrieves amount of handled commands.
+	 * @return amount of commands by name of command.
+	 */
+	public Map<String, Long> getCommandCounts() {
+		final Map<String, Long> result = new HashMap<>();
+		this.counts.forEach((command, count) -> result.put(command, count.get()));
+		return result;
+	}
+
+	/**
+	 * Stops hub. Sessions are forgotten.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+		this.sessions.clear();
+	}
+
+	/**
+	 * Starts hub and waits until process is killed.
+	 * Arguments: [port] [delay in ms for all commands] [command=delay in ms]...
+	 * @param args - command line arguments.
+	 */
+	public static void main(final String[] args) {
+		final FakeGridHub hub = start(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+		for (int i = 1; i < args.length; i++) {
+			final String[] latency = args[i].split("=");
+			if (latency.length == 1) {
+				hub.withLatency(Long.parseLong(latency[0]), TimeUnit.MILLISECONDS);
+			} else {
+				hub.withLatency(latency[0], Long.parseLong(latency[1]), TimeUnit.MILLISECONDS);
+			}
+		}
+		System.out.println("Use -Dgrid.hub=" + hub.getUrl());
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		HttpResponse response;
+		try {
+			final HttpRequest request = new HttpRequest(HttpMethod.valueOf(exchange.getRequestMethod()),
+					exchange.getRequestURI().getPath().substring(PATH.length()));
+			request.setContent(readAll(exchange.getRequestBody()));
+			final Command command = this.commandCodec.decode(request);
+			this.counts.computeIfAbsent(command.getName(), k -> new AtomicLong()).incrementAndGet();
+			final long latency = this.latencies.getOrDefault(command.getName(), this.defaultLatency);
+			if (latency > 0) {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			}
+			response = this.responseCodec.encode(this.execute(command));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response = this.responseCodec.encode(error(null, ErrorCodes.UNHANDLED_ERROR, "Interrupted"));
+		} catch (final RuntimeException e) {
+			log.debug("Unsupported request " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+			response = this.responseCodec.encode(error(null, ErrorCodes.UNKNOWN_COMMAND, String.valueOf(e)));
+		}
+		final byte[] content = response.getContent();
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(response.getStatus(), content.length == 0 ? -1 : content.length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(content);
+		}
+	}
+
+	private Response execute(final Command command) {
+		final Map<String, ?> parameters = command.getParameters();
+		if (DriverCommand.NEW_SESSION.equals(command.getName())) {
+			final String id = UUID.randomUUID().toString();
+			this.sessions.put(id, new Session());
+			final Map<String, Object> capabilities = new HashMap<>();
+			final Object desired = parameters.get("desiredCapabilities");
+			if (desired instanceof Map) {
+				for (final Map.Entry<?, ?> entry : ((Map<?, ?>) desired).entrySet()) {
+					capabilities.put(String.valueOf(entry.getKey()), entry.getValue());
+				}
+			}
+			capabilities.put("takesScreenshot", true);
+			capabilities.put("javascriptEnabled", true);
+			return success(id, capabilities);
+		}
+		final String id = command.getSessionId() == null ? null : command.getSessionId().toString();
+		final Session session = id == null ? null : this.sessions.get(id);
+		if (session == null) {
+			return error(id, ErrorCodes.NO_SUCH_SESSION, "Session " + id + " is not found");
+		}
+		switch (command.getName()) {
+			case DriverCommand.QUIT:
+				this.sessions.remove(id);
+				return success(id, null);
+			case DriverCommand.GET:
+				session.url = String.valueOf(parameters.get("url"));
+				return success(id, null);
+			case DriverCommand.GET_CURRENT_URL:
+				return success(id, session.url);
+			case DriverCommand.GET_TITLE:
+				return success(id, "Fake page " + session.url);
+			case DriverCommand.GET_PAGE_SOURCE:
+				return success(id, "<html><head></head><body></body></html>");
+			case DriverCommand.FIND_ELEMENT:
+			case DriverCommand.FIND_CHILD_ELEMENT:
+				final String locator = String.valueOf(parameters.get("value"));
+				if (locator.contains(MISSING)) {
+					return error(id, ErrorCodes.NO_SUCH_ELEMENT, "Unable to locate element: " + locator);
+				}
+				return success(id, session.element(locator));
+			case DriverCommand.FIND_ELEMENTS:
+			case DriverCommand.FIND_CHILD_ELEMENTS:
+				final String all = String.valueOf(parameters.get("value"));
+				return success(id, all.contains(MISSING)
+						? Collections.emptyList() : Collections.singletonList(session.element(all)));
+			case DriverCommand.GET_ELEMENT_TEXT:
+				return success(id, session.elements.get(String.valueOf(parameters.get("id"))));
+			case DriverCommand.IS_ELEMENT_DISPLAYED:
+			case DriverCommand.IS_ELEMENT_ENABLED:
+				return success(id, true);
+			case DriverCommand.IS_ELEMENT_SELECTED:
+				return success(id, false);
+			case DriverCommand.GET_ELEMENT_TAG_NAME:
+				return success(id, "div");
+			case DriverCommand.GET_ELEMENT_SIZE:
+				return success(id, point("width", "height"));
+			case DriverCommand.GET_ELEMENT_LOCATION:
+				return success(id, point("x", "y"));
+			case DriverCommand.SCREENSHOT:
+				return success(id, SCREENSHOT);
+			case DriverCommand.GET_CURRENT_WINDOW_HANDLE:
+				return success(id, WINDOW);
+			case DriverCommand.GET_WINDOW_HANDLES:
+				return success(id, Collections.singletonList(WINDOW));
+			case DriverCommand.GET_ALL_COOKIES:
+				return success(id, Collections.emptyList());
+			case DriverCommand.EXECUTE_SCRIPT:
+				return success(id, snapshot(session, parameters.get("args")));
+			default:
+				return success(id, null);
+		}
+	}
+
+	/**
+	 * Answers script of ElementSnapshot: attribute names and elements are passed, state of every element is returned.
+	 * @return states of elements, or null for other scripts.
+	 */
+	private static List<Map<String, Object>> snapshot(final Session session, final Object args) {
+		if (!(args instanceof List) || ((List<?>) args).size() < 2 || !(((List<?>) args).get(0) instanceof List)) {
+			return null;
+		}
+		final List<?> arguments = (List<?>) args;
+		final List<Map<String, Object>> states = new ArrayList<>();
+		for (final Object argument : arguments.subList(1, arguments.size())) {
+			if (!(argument instanceof Map)) {
+				return null;
+			}
+			final Map<String, Object> attributes = new HashMap<>();
+			for (final Object name : (List<?>) arguments.get(0)) {
+				attributes.put(String.valueOf(name), null);
+			}
+			final Map<String, Object> state = new HashMap<>();
+			state.put("displayed", true);
+			state.put("text", session.elements.get(String.valueOf(((Map<?, ?>) argument).get("ELEMENT"))));
+			state.put("attributes", attributes);
+			states.add(state);
+		}
+		return states;
+	}
+
+	private static Response success(final String sessionId, final Object value) {
+		final Response response = new Response();
+		response.setSessionId(sessionId);
+		response.setStatus(ErrorCodes.SUCCESS);
+		response.setValue(value);
+		return response;
+	}
+
+	private static Response error(final String sessionId, final int status, final String message) {
+		final Response response = new Response();
+		response.setSessionId(sessionId);
+		response.setStatus(status);
+		response.setValue(Collections.singletonMap("message", message));
+		return response;
+	}
+
+	private static Map<String, Object> point(final String first, final String second) {
+		final Map<String, Object> point = new HashMap<>();
+		point.put(first, 0);
+		point.put(second, 0);
+		return point;
+	}
+
+	private static byte[] readAll(final InputStream input) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+
+	private static String blankScreenshot() {
+		final ByteArrayOutputStream png = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(new BufferedImage(SCREENSHOT_SIZE, SCREENSHOT_SIZE, BufferedImage.TYPE_INT_RGB), "png", png);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getEncoder().encodeToString(png.toByteArray());
+	}
+
+	/**
+	 * Url and found elements of one session.
+	 */
+	private static final class Session {
+		private final Map<String, String> elements = new ConcurrentHashMap<>();
+		private final AtomicLong lastElement = new AtomicLong();
+		private volatile String url = "about:blank";
+
+		private Map<String, String> element(final String locator) {
+			final String id = String.valueOf(this.lastElement.incrementAndGet());
+			this.elements.put(id, locator);
+			return Collections.singletonMap("ELEMENT", id);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies with log-linear buckets, like HdrHistogram.
+ * Values are kept in microseconds with relative error about 3%.
+ * @author gsikorskiy
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Adds value to histogram.
+	 * @param nanos - latency in nanoseconds.
+	 */
+	public void record(final long nanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		this.counts.incrementAndGet(index(micros));
+		this.count.incrementAndGet();
+		this.total.addAndGet(micros);
+		this.max.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * @return amount of recorded values.
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * @return sum of recorded values in microseconds.
+	 */
+	public long getTotal() {
+		return this.total.get();
+	}
+
+	/**
+	 * @return max recorded value in microseconds.
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Retrieves value, that is greater than or equal to percent of recorded values.
+	 * @param percent - from 0 to 100.
+	 * @return value in microseconds.
+	 */
+	public long getPercentile(final double percent) {
+		final long limit = (long) Math.ceil(this.count.get() * percent / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= limit && seen > 0) {
+				return Math.min(highestValue(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	private static int index(final long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		final int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+		final int sub = (int) (Math.min(micros >>> (exponent - SUB_BITS), 2 * SUB_BUCKETS - 1)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long highestValue(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
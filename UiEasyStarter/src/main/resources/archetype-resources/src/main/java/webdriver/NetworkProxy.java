@@ -0,0 +1,615 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.Environment;
+
+/**
+ * Local HTTP proxy, started for every browser session, if -Dnetwork.proxy is set.
+ * Requests, that match -Dnetwork.block patterns, are not sent: http requests get empty stub response,
+ * https tunnels are refused. Other requests are forwarded, and their time, size and status
+ * are recorded for the page, opened by Page.open. 304 responses are counted as cache hits.
+ * Https traffic is tunneled, so it is accounted per connection, not per request.
+ * Request is recorded, when it starts, and its size grows while bytes flow, so connections,
+ * that browser keeps open after page is loaded, are accounted too.
+ * Summary per page and resource is written to network.html, when tests are finished.
+ * Proxy listens only on loopback interface, unless browser runs on Grid node.
+ *
+ * @author gsikorskiy
+ */
+public final class NetworkProxy implements Closeable {
+
+	private static final String HTML_FILE = "network.html";
+	private static final String CRLF = "\r\n";
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int SLOWEST = 5;
+	private static final int NOT_MODIFIED = 304;
+	private static final int BAD_GATEWAY = 502;
+	private static final String SEPARATOR = "|";
+	private static final Logger log = LoggerFactory.getLogger(NetworkProxy.class);
+	private static final List<Pattern> BLOCKED = compile(Environment.NETWORK_BLOCK);
+	private static final Map<WebDriver, NetworkProxy> PROXIES = new ConcurrentHashMap<>();
+	private static final Queue<Entry> REPORTED = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger THREADS = new AtomicInteger();
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+		final Thread thread = new Thread(r, "network-proxy-" + THREADS.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ServerSocket server;
+	private final boolean remote;
+	private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+	private volatile String page = "";
+
+	private NetworkProxy(final boolean remote) throws IOException {
+		this.remote = remote;
+		// local browser reaches proxy by loopback, so proxy is not open for other hosts
+		this.server = remote ? new ServerSocket(0) : new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+		EXECUTOR.execute(this::accept);
+	}
+
+	/**
+	 * Starts proxy for new browser session, if -Dnetwork.proxy is set.
+	 * @param remote - true if browser runs on Grid node, so proxy listens on all interfaces.
+	 * @return started proxy or empty.
+	 */
+	static Optional<NetworkProxy> startIfEnabled(final boolean remote) {
+		if (!Environment.NETWORK_PROXY) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(new NetworkProxy(remote));
+		} catch (final IOException e) {
+			log.error("Unable to start network proxy, browser will connect directly.", e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Binds proxy to driver, that uses it.
+	 * @param driver - driver, that is returned to tests.
+	 * @param proxy - proxy of driver.
+	 */
+	static void register(final WebDriver driver, final NetworkProxy proxy) {
+		PROXIES.put(driver, proxy);
+	}
+
+	/**
+	 * Retrieves proxy of driver.
+	 * @param driver - driver of test.
+	 * @return proxy or empty, if driver connects directly.
+	 */
+	public static Optional<NetworkProxy> of(final WebDriver driver) {
+		return Optional.ofNullable(PROXIES.get(driver));
+	}
+
+	/**
+	 * Stops proxy of driver, that is quit.
+	 * @param driver - quit driver.
+	 */
+	static void stop(final WebDriver driver) {
+		final NetworkProxy proxy = PROXIES.remove(driver);
+		if (proxy != null) {
+			proxy.close();
+		}
+	}
+
+	/**
+	 * Creates proxy settings for browser. Proxy of Grid node is addressed by address of this host.
+	 * @return settings of http and ssl proxy.
+	 */
+	Proxy getSeleniumProxy() {
+		String host = InetAddress.getLoopbackAddress().getHostAddress();
+		if (this.remote) {
+			try {
+				host = InetAddress.getLocalHost().getHostAddress();
+			} catch (final UnknownHostException e) {
+				log.warn("Unable to resolve address of this host, Grid node may not reach proxy.");
+			}
+		}
+		final String address = host + ":" + this.server.getLocalPort();
+		final Proxy proxy = new Proxy();
+		proxy.setHttpProxy(address);
+		proxy.setSslProxy(address);
+		return proxy;
+	}
+
+	/**
+	 * Starts accounting of requests for new page. Requests, sent after previous page was finished,
+	 * stay in network report under name of previous page.
+	 * @param name - name of page in report.
+	 */
+	public void startPage(final String name) {
+		this.report();
+		this.page = name;
+	}
+
+	/**
+	 * Finishes accounting of current page and adds its requests to network report.
+	 * Requests, that are not finished yet, keep growing in report.
+	 * @return requests of page, sent after startPage.
+	 */
+	public List<Entry> finishPage() {
+		final List<Entry> result = this.report();
+		if (!result.isEmpty()) {
+			log.info(summary(this.page, result));
+		}
+		return result;
+	}
+
+	@Override
+	public void close() {
+		try {
+			this.server.close();
+		} catch (final IOException e) {
+			log.debug("Unable to close network proxy: " + e.getMessage());
+		}
+		this.report();
+	}
+
+	/**
+	 * Moves recorded requests to network report.
+	 */
+	private List<Entry> report() {
+		final List<Entry> result = new ArrayList<>();
+		for (Entry entry = this.entries.poll(); entry != null; entry = this.entries.poll()) {
+			result.add(entry);
+			REPORTED.add(entry);
+		}
+		return result;
+	}
+
+	/**
+	 * Records request of current page, when it starts.
+	 */
+	private Entry record(final String method, final String url, final boolean blocked) {
+		final Entry entry = new Entry(this.page, method, url, blocked);
+		this.entries.add(entry);
+		return entry;
+	}
+
+	/**
+	 * Writes summary of resources per page. Nothing is written if proxy was not used.
+	 * @param dir - folder of html report.
+	 */
+	public static void writeReport(final File dir) {
+		PROXIES.values().forEach(NetworkProxy::report);
+		if (REPORTED.isEmpty()) {
+			return;
+		}
+		// requests are summed up at the end, when long connections have their final size
+		final Map<String, Resource> resources = new TreeMap<>();
+		for (final Entry entry : REPORTED) {
+			resources.computeIfAbsent(entry.page + SEPARATOR + entry.url, k -> new Resource()).add(entry);
+		}
+		final StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Network</title></head><body><table border=${symbol_escape}"1${symbol_escape}">");
+		html.append("<tr><th>Page</th><th>Resource</th><th>Requests</th><th>Blocked</th><th>Cached</th>");
+		html.append("<th>KB</th><th>Average, ms</th><th>Max, ms</th><th>Total, ms</th></tr>");
+		for (final Map.Entry<String, Resource> entry : resources.entrySet()) {
+			final int separator = entry.getKey().indexOf(SEPARATOR);
+			final Resource resource = entry.getValue();
+			final long count = resource.count.get();
+			html.append("<tr><td>").append(entry.getKey(), 0, separator)
+				.append("</td><td>").append(entry.getKey().substring(separator + 1))
+				.append("</td><td>").append(count)
+				.append("</td><td>").append(resource.blocked.get())
+				.append("</td><td>").append(resource.cached.get())
+				.append("</td><td>").append(resource.bytes.get() / 1024)
+				.append("</td><td>").append(count == 0 ? 0 : resource.millis.get() / count)
+				.append("</td><td>").append(resource.maxMillis.get())
+				.append("</td><td>").append(resource.millis.get()).append("</td></tr>");
+		}
+		html.append("</table></body></html>");
+		try {
+			Files.createDirectories(dir.toPath());
+			Files.write(new File(dir, HTML_FILE).toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (final IOException e) {
+			log.error("Unable to write network report to " + dir, e);
+		}
+	}
+
+	private static String summary(final String page, final List<Entry> entries) {
+		long bytes = 0;
+		int blocked = 0;
+		int cached = 0;
+		for (final Entry entry : entries) {
+			bytes += entry.getBytes();
+			blocked += entry.blocked ? 1 : 0;
+			cached += entry.isCached() ? 1 : 0;
+		}
+		final List<Entry> slowest = new ArrayList<>(entries);
+		slowest.sort((a, b) -> Long.compare(b.millis, a.millis));
+		final StringBuilder result = new StringBuilder();
+		result.append("Network of ").append(page).append(": ").append(entries.size()).append(" requests, ")
+			.append(bytes / 1024).append(" KB, ").append(blocked).append(" blocked, ")
+			.append(cached).append(" cached. Slowest:");
+		for (final Entry entry : slowest.subList(0, Math.min(SLOWEST, slowest.size()))) {
+			result.append(' ').append(entry.url).append(" (").append(entry.millis).append(" ms)");
+		}
+		return result.toString();
+	}
+
+	private static List<Pattern> compile(final List<String> globs) {
+		final List<Pattern> patterns = new ArrayList<>();
+		for (final String glob : globs) {
+			final StringBuilder regexp = new StringBuilder();
+			for (final String part : glob.split("${symbol_escape}${symbol_escape}*", -1)) {
+				if (regexp.length() > 0) {
+					regexp.append(".*");
+				}
+				regexp.append(Pattern.quote(part));
+			}
+			patterns.add(Pattern.compile(regexp.toString(), Pattern.CASE_INSENSITIVE));
+		}
+		return patterns;
+	}
+
+	private static String stubType(final String url) {
+		final String path = url.split("[?]")[0].toLowerCase();
+		if (path.endsWith(".js")) {
+			return "application/javascript";
+		}
+		return path.endsWith(".css") ? "text/css" : "text/plain";
+	}
+
+	private static boolean isBlocked(final String url) {
+		for (final Pattern pattern : BLOCKED) {
+			if (pattern.matcher(url).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void accept() {
+		while (!this.server.isClosed()) {
+			try {
+				final Socket client = this.server.accept();
+				EXECUTOR.execute(() -> this.serve(client));
+			} catch (final IOException e) {
+				if (!this.server.isClosed()) {
+					log.debug("Network proxy failed to accept connection: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void serve(final Socket client) {
+		final long start = System.nanoTime();
+		try (Socket socket = client) {
+			final InputStream in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+			final String requestLine = readLine(in);
+			if (requestLine == null || requestLine.isEmpty()) {
+				return;
+			}
+			final String[] request = requestLine.split(" ");
+			final List<String> headers = new ArrayList<>();
+			for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+				headers.add(header);
+			}
+			if ("CONNECT".equalsIgnoreCase(request[0])) {
+				this.tunnel(start, request[1], in, socket.getOutputStream());
+			} else {
+				this.forward(start, request, headers, in, socket.getOutputStream());
+			}
+		} catch (final IOException | RuntimeException e) {
+			// malformed request or response must not kill proxy thread
+			log.debug("Network proxy connection failed: " + e);
+		}
+	}
+
+	private void forward(final long start, final String[] request, final List<String> headers,
+			final InputStream in, final OutputStream out) throws IOException {
+		final String url = request[1];
+		final Entry entry = this.record(request[0], url, isBlocked(url));
+		try {
+			forward(entry, start, request, headers, in, out);
+		} finally {
+			entry.finished = true;
+		}
+	}
+
+	private static void forward(final Entry entry, final long start, final String[] request, final List<String> headers,
+			final InputStream in, final OutputStream out) throws IOException {
+		final String url = entry.url;
+		if (entry.blocked) {
+			out.write(("HTTP/1.1 200 OK" + CRLF + "Content-Type: " + stubType(url) + CRLF + "Content-Length: 0" + CRLF
+					+ "Connection: close" + CRLF + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			return;
+		}
+		final URI uri = URI.create(url);
+		final int port = uri.getPort() == -1 ? 80 : uri.getPort();
+		final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		final StringBuilder upstreamRequest = new StringBuilder();
+		upstreamRequest.append(request[0]).append(' ').append(path)
+			.append(uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery())
+			.append(' ').append(request.length > 2 ? request[2] : "HTTP/1.1").append(CRLF);
+		long contentLength = 0;
+		for (final String header : headers) {
+			final String name = header.substring(0, Math.max(header.indexOf(':'), 0)).trim().toLowerCase();
+			if (name.equals("connection") || name.equals("proxy-connection") || name.equals("keep-alive")) {
+				continue;
+			}
+			if (name.equals("content-length")) {
+				contentLength = Long.parseLong(header.substring(header.indexOf(':') + 1).trim());
+			}
+			upstreamRequest.append(header).append(CRLF);
+		}
+		upstreamRequest.append("Connection: close").append(CRLF).append(CRLF);
+
+		try (Socket upstream = new Socket()) {
+			final InputStream upstreamIn;
+			final String statusLine;
+			try {
+				upstream.connect(new InetSocketAddress(uri.getHost(), port),
+						(int) TimeUnit.SECONDS.toMillis(Environment.TIMEOUT));
+				final OutputStream upstreamOut = upstream.getOutputStream();
+				upstreamOut.write(upstreamRequest.toString().getBytes(StandardCharsets.ISO_8859_1));
+				copy(in, upstreamOut, contentLength, null);
+				upstreamOut.flush();
+				upstreamIn = new BufferedInputStream(upstream.getInputStream(), BUFFER_SIZE);
+				statusLine = readLine(upstreamIn);
+				if (statusLine == null) {
+					throw new IOException("connection is closed without response");
+				}
+			} catch (final IOException e) {
+				log.debug("Network proxy cann't get response of " + url + ": " + e.getMessage());
+				badGateway(entry, start, out);
+				return;
+			}
+			entry.respond(statusCode(statusLine), start);
+			out.write((statusLine + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+			copy(upstreamIn, out, Long.MAX_VALUE, entry.bytes);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Answers browser, that upstream server can't be reached, request is recorded with 502 status.
+	 */
+	private static void badGateway(final Entry entry, final long start, final OutputStream out) throws IOException {
+		entry.respond(BAD_GATEWAY, start);
+		out.write(("HTTP/1.1 502 Bad Gateway" + CRLF + "Content-Length: 0" + CRLF + "Connection: close" + CRLF + CRLF)
+				.getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+
+	/**
+	 * @return status code of response status line, or 0 if it is malformed.
+	 */
+	private static int statusCode(final String statusLine) {
+		final String[] status = statusLine.split(" ");
+		try {
+			return status.length > 1 ? Integer.parseInt(status[1]) : 0;
+		} catch (final NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private void tunnel(final long start, final String authority, final InputStream in, final OutputStream out)
+			throws IOException {
+		final String url = "https://" + authority;
+		final Entry entry = this.record("CONNECT", url, isBlocked(url));
+		try {
+			tunnel(entry, start, authority, in, out);
+		} finally {
+			entry.finished = true;
+		}
+	}
+
+	private static void tunnel(final Entry entry, final long start, final String authority, final InputStream in,
+			final OutputStream out) throws IOException {
+		if (entry.blocked) {
+			out.write(("HTTP/1.1 403 Forbidden" + CRLF + "Content-Length: 0" + CRLF + CRLF)
+					.getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			return;
+		}
+		final int colon = authority.lastIndexOf(':');
+		try (Socket upstream = new Socket()) {
+			try {
+				upstream.connect(new InetSocketAddress(authority.substring(0, colon),
+						Integer.parseInt(authority.substring(colon + 1))),
+						(int) TimeUnit.SECONDS.toMillis(Environment.TIMEOUT));
+			} catch (final IOException e) {
+				log.debug("Network proxy cann't connect to " + authority + ": " + e.getMessage());
+				badGateway(entry, start, out);
+				return;
+			}
+			entry.respond(200, start);
+			out.write(("HTTP/1.1 200 Connection established" + CRLF + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+			EXECUTOR.execute(() -> {
+				try {
+					copy(in, upstream.getOutputStream(), Long.MAX_VALUE, entry.bytes);
+					upstream.shutdownOutput();
+				} catch (final IOException e) {
+					log.trace("Tunnel to " + authority + " is closed: " + e.getMessage());
+				}
+			});
+			try {
+				copy(upstream.getInputStream(), out, Long.MAX_VALUE, entry.bytes);
+			} catch (final SocketException e) {
+				log.trace("Tunnel to " + authority + " is closed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Copies bytes and adds their amount to counter, if it is set, as they flow.
+	 */
+	private static long copy(final InputStream in, final OutputStream out, final long limit,
+			final AtomicLong counter) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long total = 0;
+		while (total < limit) {
+			final int read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total));
+			if (read == -1) {
+				break;
+			}
+			out.write(buffer, 0, read);
+			total += read;
+			if (counter != null) {
+				counter.addAndGet(read);
+			}
+		}
+		return total;
+	}
+
+	private static String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		for (int b = in.read(); b != -1; b = in.read()) {
+			if (b == '\n') {
+				final int length = line.size();
+				final byte[] bytes = line.toByteArray();
+				return new String(bytes, 0, length > 0 && bytes[length - 1] == '\r' ? length - 1 : length,
+						StandardCharsets.ISO_8859_1);
+			}
+			line.write(b);
+		}
+		return line.size() == 0 ? null : line.toString("ISO-8859-1");
+	}
+
+	/**
+	 * One request, sent by browser. Status, time and size are updated while request is running.
+	 */
+	public static final class Entry {
+		private final String page;
+		private final String method;
+		private final String url;
+		private final boolean blocked;
+		private final AtomicLong bytes = new AtomicLong();
+		private volatile int status;
+		private volatile long millis;
+		private volatile boolean finished;
+
+		private Entry(final String page, final String method, final String url, final boolean blocked) {
+			this.page = page;
+			this.method = method;
+			this.url = url;
+			this.blocked = blocked;
+		}
+
+		private void respond(final int code, final long start) {
+			this.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			this.status = code;
+		}
+
+		/**
+		 * @return http method or CONNECT for https tunnel.
+		 */
+		public String getMethod() {
+			return this.method;
+		}
+
+		/**
+		 * @return requested url, for https tunnel only host and port.
+		 */
+		public String getUrl() {
+			return this.url;
+		}
+
+		/**
+		 * @return http status of response, 0 for blocked request or request without response yet.
+		 */
+		public int getStatus() {
+			return this.status;
+		}
+
+		/**
+		 * @return size of response with headers, for https tunnel traffic in both directions.
+		 */
+		public long getBytes() {
+			return this.bytes.get();
+		}
+
+		/**
+		 * @return time to first byte of response, for https tunnel time to connect.
+		 */
+		public long getMillis() {
+			return this.millis;
+		}
+
+		/**
+		 * @return true if request was blocked by -Dnetwork.block.
+		 */
+		public boolean isBlocked() {
+			return this.blocked;
+		}
+
+		/**
+		 * @return true if server answered, that browser cache is valid.
+		 */
+		public boolean isCached() {
+			return this.status == NOT_MODIFIED;
+		}
+
+		/**
+		 * @return true if connection is closed, otherwise size of request can grow.
+		 */
+		public boolean isFinished() {
+			return this.finished;
+		}
+	}
+
+	/**
+	 * Requests of one resource on one page.
+	 */
+	private static final class Resource {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong blocked = new AtomicLong();
+		private final AtomicLong cached = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong millis = new AtomicLong();
+		private final AtomicLong maxMillis = new AtomicLong();
+
+		private void add(final Entry entry) {
+			this.count.incrementAndGet();
+			this.blocked.addAndGet(entry.blocked ? 1 : 0);
+			this.cached.addAndGet(entry.isCached() ? 1 : 0);
+			this.bytes.addAndGet(entry.getBytes());
+			this.millis.addAndGet(entry.millis);
+			this.maxMillis.accumulateAndGet(entry.millis, Math::max);
+		}
+	}
+}
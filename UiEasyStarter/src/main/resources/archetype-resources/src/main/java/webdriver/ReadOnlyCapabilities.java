@@ -0,0 +1,71 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * Capabilities, that can't be changed. They are shared by all sessions of one browser configuration.
+ * @author gsikorskiy
+ *
+ */
+final class ReadOnlyCapabilities implements Capabilities {
+
+	private final DesiredCapabilities capabilities;
+	private final Map<String, ?> map;
+
+	/**
+	 * Copies capabilities.
+	 * @param capabilities - capabilities to copy.
+	 */
+	ReadOnlyCapabilities(final Capabilities capabilities) {
+		this.capabilities = new DesiredCapabilities(capabilities);
+		this.map = Collections.unmodifiableMap(this.capabilities.asMap());
+	}
+
+	@Override
+	public String getBrowserName() {
+		return this.capabilities.getBrowserName();
+	}
+
+	@Override
+	public Platform getPlatform() {
+		return this.capabilities.getPlatform();
+	}
+
+	@Override
+	public String getVersion() {
+		return this.capabilities.getVersion();
+	}
+
+	@Override
+	public boolean isJavascriptEnabled() {
+		return this.capabilities.isJavascriptEnabled();
+	}
+
+	@Override
+	public Map<String, ?> asMap() {
+		return this.map;
+	}
+
+	@Override
+	public Object getCapability(final String capabilityName) {
+		return this.capabilities.getCapability(capabilityName);
+	}
+
+	@Override
+	public boolean is(final String capabilityName) {
+		return this.capabilities.is(capabilityName);
+	}
+
+	@Override
+	public String toString() {
+		return "ReadOnly" + this.capabilities;
+	}
+}
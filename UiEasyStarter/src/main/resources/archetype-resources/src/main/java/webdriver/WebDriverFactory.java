@@ -3,9 +3,24 @@
 #set( $symbol_escape = '\' )
 package webdriver;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
@@ -37,6 +52,22 @@ public final class WebDriverFactory {
 	 */
 	public static final String DRIVER_ATTRIBUTE_NAME = "driver";
 
+	private static final Map<Browser, Capabilities> TEMPLATES = new ConcurrentHashMap<>();
+	private static final Map<String, Platform> PLATFORMS = new HashMap<>();
+	private static final ExecutorService SESSION_STARTER;
+
+	static {
+		final AtomicInteger threads = new AtomicInteger();
+		SESSION_STARTER = Executors.newCachedThreadPool(r -> {
+			final Thread thread = new Thread(r, "session-starter-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (final Platform platform : Platform.values()) {
+			PLATFORMS.put(platform.name(), platform);
+		}
+	}
+
     private WebDriverFactory() {
     }
 
@@ -51,28 +82,107 @@ public final class WebDriverFactory {
 	 */
 	public static WebDriver getInstance(final Browser browser) {
 
-		WebDriver webDriver = null;
+		if (!Environment.GRID_HUB_URL.isPresent()) {
+			return getInstanceOnLocalhost(browser.getName());
+		}
 
-		final BrowserName browserName = browser.getName();
-		DesiredCapabilities capability = new DesiredCapabilities();
-		capability.setJavascriptEnabled(true);
-		capability.setCapability(CapabilityType.TAKES_SCREENSHOT, true);
+		final long start = System.nanoTime();
 
-		if (!Environment.GRID_HUB_URL.isPresent()) {
-			return getInstanceOnLocalhost(browserName);
+		final DesiredCapabilities capability = new DesiredCapabilities(getCapabilities(browser));
+		final Optional<NetworkProxy> proxy = NetworkProxy.startIfEnabled(true);
+		proxy.ifPresent(p -> capability.setCapability(CapabilityType.PROXY, p.getSeleniumProxy()));
+
+		// Create Remote WebDriver
+		final WebDriver webDriver;
+		try {
+			webDriver = new RemoteWebDriver(Environment.GRID_HUB_URL.get(), capability);
+		} catch (final RuntimeException e) {
+			proxy.ifPresent(NetworkProxy::close);
+			throw e;
+		}
+
+		webDriver.manage().timeouts().implicitlyWait(Environment.TIMEOUT, TimeUnit.SECONDS);
+		webDriver.manage().timeouts().pageLoadTimeout(Environment.TIMEOUT, TimeUnit.SECONDS);
+		DriverMetrics.record(browser.toString(), "startup", System.nanoTime() - start);
+		return register(DriverMetrics.instrument(webDriver, browser.toString()), proxy);
+	}
+
+	/**
+	 * Quits driver and stops its network proxy.
+	 * @param driver - driver to quit.
+	 */
+	public static void quit(final WebDriver driver) {
+		try {
+			driver.quit();
+		} finally {
+			NetworkProxy.stop(driver);
 		}
+	}
+
+	private static WebDriver register(final WebDriver driver, final Optional<NetworkProxy> proxy) {
+		proxy.ifPresent(p -> NetworkProxy.register(driver, p));
+		return driver;
+	}
+
+	/**
+	 * Starts several sessions of the same browser concurrently.
+	 * If any session can't be started, already started ones are quit.
+	 * @param browser - configuration of browser.
+	 * @param count - amount of sessions.
+	 * @return future with started drivers.
+	 */
+	public static CompletableFuture<List<WebDriver>> getInstances(final Browser browser, final int count) {
+		return getInstances(count, () -> getInstance(browser));
+	}
+
+	/**
+	 * Runs factory of drivers concurrently.
+	 * @param count - amount of sessions.
+	 * @param factory - starts one session.
+	 * @return future with started drivers.
+	 */
+	static CompletableFuture<List<WebDriver>> getInstances(final int count, final Supplier<WebDriver> factory) {
+		final List<CompletableFuture<WebDriver>> sessions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			sessions.add(CompletableFuture.supplyAsync(factory, SESSION_STARTER));
+		}
+		return CompletableFuture.allOf(sessions.toArray(new CompletableFuture<?>[count]))
+				.handle((ignored, error) -> {
+					final List<WebDriver> drivers = new ArrayList<>(count);
+					for (final CompletableFuture<WebDriver> session : sessions) {
+						if (!session.isCompletedExceptionally()) {
+							drivers.add(session.join());
+						}
+					}
+					if (error != null) {
+						drivers.forEach(WebDriverFactory::quit);
+						throw error instanceof CompletionException
+								? (CompletionException) error : new CompletionException(error);
+					}
+					return drivers;
+				});
+	}
 
-		switch (browserName) {
+	/**
+	 * Retrieves capabilities of browser. They are built once for every browser configuration,
+	 * Firefox profile is serialized once too.
+	 * @param browser - configuration of browser.
+	 * @return read-only capabilities, copy them before changing.
+	 */
+	public static Capabilities getCapabilities(final Browser browser) {
+		return TEMPLATES.computeIfAbsent(browser, WebDriverFactory::createCapabilities);
+	}
+
+	private static Capabilities createCapabilities(final Browser browser) {
+		DesiredCapabilities capability;
+		switch (browser.getName()) {
 		case CHROME:
 			capability = DesiredCapabilities.chrome();
 			capability.setCapability("chrome.switches", Arrays.asList("--ignore-certificate-errors"));
 			break;
 		case FIREFOX:
-			final FirefoxProfile profile = new FirefoxProfile();
-			profile.setEnableNativeEvents(false);
-            profile.setAssumeUntrustedCertificateIssuer(false);
             capability = DesiredCapabilities.firefox();
-            capability.setCapability(FirefoxDriver.PROFILE, profile);
+            capability.setCapability(FirefoxDriver.PROFILE, FirefoxProfileJson.VALUE);
 			break;
 		case IE:
 			capability = DesiredCapabilities.internetExplorer();
@@ -99,16 +209,9 @@ public final class WebDriverFactory {
 
 		capability = setVersionAndPlatform(capability, browser.getVersion(),
 				browser.getPlatform());
-
-		// Create Remote WebDriver
-		webDriver = new RemoteWebDriver(Environment.GRID_HUB_URL.get(), capability);
-
-		webDriver.manage().timeouts().implicitlyWait(Environment.TIMEOUT, TimeUnit.SECONDS);
-		webDriver.manage().timeouts().pageLoadTimeout(Environment.TIMEOUT, TimeUnit.SECONDS);
-		return webDriver;
+		return new ReadOnlyCapabilities(capability);
 	}
 
-
 	/**
 	 * Factory method to return a WebDriver instance given the browser to hit.
 	 *
@@ -119,34 +222,47 @@ public final class WebDriverFactory {
 	public static WebDriver getInstanceOnLocalhost(final BrowserName browser) {
 
 		WebDriver webDriver = null;
+		final long start = System.nanoTime();
+		final DesiredCapabilities capability = new DesiredCapabilities();
+		final Optional<NetworkProxy> proxy = NetworkProxy.startIfEnabled(false);
+		proxy.ifPresent(p -> capability.setCapability(CapabilityType.PROXY, p.getSeleniumProxy()));
 
-		switch (browser) {
-		case CHROME:
-			setChromeDriver();
-			webDriver = new ChromeDriver();
-			break;
-		case FIREFOX:
-			final FirefoxProfile profile = new FirefoxProfile();
-			profile.setEnableNativeEvents(false);
-            profile.setAssumeUntrustedCertificateIssuer(false);
-			webDriver = new FirefoxDriver(profile);
-			break;
-//		case OPERA:
-//			webDriver = new OperaDriver();
-//			break;
-		case IE:
-            isSupportedPlatform(browser);
-			webDriver = new InternetExplorerDriver();
-			break;
-		case SAFARI:
-            isSupportedPlatform(browser);
-            webDriver = new SafariDriver();
-            break;
-        default:
-        	webDriver = new HtmlUnitDriver(true);
+		try {
+			switch (browser) {
+			case CHROME:
+				setChromeDriver();
+				webDriver = new ChromeDriver(capability);
+				break;
+			case FIREFOX:
+				final FirefoxProfile profile = new FirefoxProfile();
+				profile.setEnableNativeEvents(false);
+				profile.setAssumeUntrustedCertificateIssuer(false);
+				capability.setCapability(FirefoxDriver.PROFILE, profile);
+				webDriver = new FirefoxDriver(capability);
+				break;
+//			case OPERA:
+//				webDriver = new OperaDriver();
+//				break;
+			case IE:
+				isSupportedPlatform(browser);
+				webDriver = new InternetExplorerDriver(capability);
+				break;
+			case SAFARI:
+				isSupportedPlatform(browser);
+				webDriver = new SafariDriver(capability);
+				break;
+			default:
+				final HtmlUnitDriver htmlUnit = new HtmlUnitDriver(true);
+				proxy.ifPresent(p -> htmlUnit.setProxySettings(p.getSeleniumProxy()));
+				webDriver = htmlUnit;
+			}
+		} catch (final RuntimeException e) {
+			proxy.ifPresent(NetworkProxy::close);
+			throw e;
 		}
 		webDriver.manage().timeouts().implicitlyWait(Environment.TIMEOUT, TimeUnit.SECONDS);
-		return webDriver;
+		DriverMetrics.record(browser.name(), "startup", System.nanoTime() - start);
+		return register(DriverMetrics.instrument(webDriver, browser.name()), proxy);
 	}
 
 	/**
@@ -162,12 +278,8 @@ public final class WebDriverFactory {
 			final String version,
 			final String platform) {
 
-		capability.setPlatform(Platform.ANY);
-		for (final Platform isThis : Platform.values()) {
-			if (isThis.name().equalsIgnoreCase(platform)) {
-				capability.setPlatform(isThis);
-			}
-		}
+		capability.setPlatform(platform == null
+				? Platform.ANY : PLATFORMS.getOrDefault(platform.toUpperCase(), Platform.ANY));
 		if (version != null) {
 			capability.setVersion(version);
 		}
@@ -184,6 +296,29 @@ public final class WebDriverFactory {
 		System.setProperty("webdriver.chrome.driver", chromeBinary);
 	}
 
+	/**
+	 * Firefox profile is zipped and encoded to base64, when capabilities are sent to Grid.
+	 * Node accepts such string as profile, so it is done once.
+	 * @return profile in format of FirefoxProfile.toJson().
+	 */
+	private static String serializeFirefoxProfile() {
+		final FirefoxProfile profile = new FirefoxProfile();
+		profile.setEnableNativeEvents(false);
+		profile.setAssumeUntrustedCertificateIssuer(false);
+		try {
+			return profile.toJson();
+		} catch (final IOException e) {
+			throw new UncheckedIOException("Unable to serialize Firefox profile", e);
+		}
+	}
+
+	/**
+	 * Holder of serialized profile, it is created on first use.
+	 */
+	private static final class FirefoxProfileJson {
+		private static final String VALUE = serializeFirefoxProfile();
+	}
+
     private static void isSupportedPlatform(final BrowserName browser) {
         boolean isSupported = true;
         final Platform current = Platform.getCurrent();
@@ -0,0 +1,200 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package webdriver;
+
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import common.Environment;
+
+/**
+ * Bounded pool of browser sessions. One pool is kept for every browser configuration.
+ * Sessions are leased by test threads and reset on return instead of quit,
+ * so browser startup is paid only once per pool slot.
+ * Size of the pool is set by -Ddriver.pool.size, max reuse count by -Ddriver.pool.max.reuse.
+ *
+ * @author gsikorskiy
+ */
+public final class WebDriverPool {
+
+	private static final Logger log = LoggerFactory.getLogger(WebDriverPool.class);
+	private static final Map<Browser, WebDriverPool> POOLS = new ConcurrentHashMap<>();
+	private static final Map<WebDriver, WebDriverPool> LEASED = new ConcurrentHashMap<>();
+
+	private final Browser browser;
+	private final Supplier<WebDriver> factory;
+	private final int size;
+	private final Semaphore slots;
+	private final BlockingDeque<WebDriver> idle = new LinkedBlockingDeque<>();
+	private final Map<WebDriver, Integer> usages = new ConcurrentHashMap<>();
+	private volatile boolean closed;
+
+	private WebDriverPool(final Browser browser, final int size, final Supplier<WebDriver> factory) {
+		this.browser = browser;
+		this.factory = factory;
+		this.size = size;
+		this.slots = new Semaphore(size, true);
+	}
+
+	/**
+	 * Checks that sessions should be pooled.
+	 * @return true if -Ddriver.pool.size is greater than 0.
+	 */
+	public static boolean isEnabled() {
+		return Environment.DRIVER_POOL_SIZE > 0;
+	}
+
+	/**
+	 * Starts browsers concurrently, until pool for this configuration is full.
+	 * @param browser - configuration of browser to start.
+	 */
+	public static void prewarm(final Browser browser) {
+		final WebDriverPool pool = getPool(browser);
+		final int missing = pool.size - pool.idle.size() - (pool.size - pool.slots.availablePermits());
+		log.info("Pre-warm " + missing + " sessions of " + browser);
+		if (missing > 0) {
+			pool.idle.addAll(WebDriverFactory.getInstances(missing, pool.factory).join());
+		}
+	}
+
+	/**
+	 * Takes healthy session from the pool or starts new one, if pool has free slot.
+	 * Waits for free slot not more than default timeout.
+	 * @param browser - configuration of browser.
+	 * @return driver, that belongs to current caller until it is released.
+	 */
+	public static WebDriver lease(final Browser browser) {
+		return getPool(browser).lease();
+	}
+
+	/**
+	 * Takes session of browser, started in current JVM even if grid hub is set.
+	 * It is used for HtmlUnit, which doesn't need separate process.
+	 * @param browser - configuration of browser.
+	 * @param size - size of pool, used when pool is created.
+	 * @return driver, that belongs to current caller until it is released.
+	 */
+	public static WebDriver leaseInProcess(final Browser browser, final int size) {
+		return POOLS.computeIfAbsent(browser, b -> new WebDriverPool(b, size,
+				() -> WebDriverFactory.getInstanceOnLocalhost(b.getName()))).lease();
+	}
+
+	private WebDriver lease() {
+		try {
+			if (!this.slots.tryAcquire(Environment.TIMEOUT, TimeUnit.SECONDS)) {
+				throw new RuntimeException("There is no free " + this.browser + " session in pool during "
+						+ Environment.TIMEOUT + " seconds. Increase size of pool.");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for " + this.browser + " session.", e);
+		}
+		try {
+			final WebDriver driver = this.takeHealthy();
+			LEASED.put(driver, this);
+			return driver;
+		} catch (final RuntimeException e) {
+			this.slots.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns driver to its pool. Driver is cleaned up for the next test,
+	 * or quit if it was reused too many times or can't be cleaned.
+	 * Drivers, that were not leased from pool, are simply quit.
+	 * @param driver - driver to release.
+	 */
+	public static void release(final WebDriver driver) {
+		final WebDriverPool pool = LEASED.remove(driver);
+		if (pool == null) {
+			WebDriverFactory.quit(driver);
+			return;
+		}
+		try {
+			final int used = pool.usages.merge(driver, 1, Integer::sum);
+			if (pool.closed || used >= Environment.DRIVER_MAX_REUSE || !reset(driver)) {
+				pool.discard(driver);
+			} else {
+				pool.idle.offerFirst(driver);
+			}
+		} finally {
+			pool.slots.release();
+		}
+	}
+
+	/**
+	 * Quits all idle sessions. Leased sessions are quit when they are released.
+	 */
+	public static void shutdown() {
+		for (final WebDriverPool pool : POOLS.values()) {
+			pool.closed = true;
+			for (WebDriver driver = pool.idle.poll(); driver != null; driver = pool.idle.poll()) {
+				pool.discard(driver);
+			}
+		}
+		POOLS.clear();
+	}
+
+	private static WebDriverPool getPool(final Browser browser) {
+		return POOLS.computeIfAbsent(browser, b -> new WebDriverPool(b, Environment.DRIVER_POOL_SIZE,
+				() -> WebDriverFactory.getInstance(b)));
+	}
+
+	private WebDriver takeHealthy() {
+		for (WebDriver driver = this.idle.poll(); driver != null; driver = this.idle.poll()) {
+			if (isAlive(driver)) {
+				return driver;
+			}
+			log.debug("Pooled " + this.browser + " session is dead, it will be replaced.");
+			this.discard(driver);
+		}
+		return this.factory.get();
+	}
+
+	private void discard(final WebDriver driver) {
+		this.usages.remove(driver);
+		try {
+			WebDriverFactory.quit(driver);
+		} catch (final WebDriverException e) {
+			log.debug("Unable to quit " + this.browser + " session: " + e.getMessage());
+		}
+	}
+
+	private static boolean isAlive(final WebDriver driver) {
+		try {
+			driver.getWindowHandle();
+			return true;
+		} catch (final WebDriverException e) {
+			return false;
+		}
+	}
+
+	private static boolean reset(final WebDriver driver) {
+		try {
+			if (driver instanceof JavascriptExecutor) {
+				((JavascriptExecutor) driver).executeScript("try {"
+						+ " window.localStorage.clear(); window.sessionStorage.clear();"
+						+ " } catch (e) { }");
+			}
+			driver.manage().deleteAllCookies();
+			driver.get("about:blank");
+			return true;
+		} catch (final WebDriverException e) {
+			log.debug("Unable to reset pooled session: " + e.getMessage());
+			return false;
+		}
+	}
+}
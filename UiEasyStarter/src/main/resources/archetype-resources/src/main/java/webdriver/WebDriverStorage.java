@@ -1,26 +1,105 @@
 #set( $symbol_pound = '#' )
 #set( $symbol_dollar = '$' )
 #set( $symbol_escape = '\' )
-package webdriver;
+package webdriver;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.openqa.selenium.WebDriver;
-
-/**
- * It represents a browser. It contains name, version and platform fields.
- *
- * @author gsikorskiy
- */
-public class WebDriverStorage {
-
-	private static final ThreadLocal<WebDriver> DRIVER_STORAGE = new ThreadLocal<WebDriver>();
+
+/**
+ * Keeps drivers of current thread. Drivers are taken from WebDriverPool if it is enabled.
+ * Drivers are kept in stack: the last added driver is used, until it is removed,
+ * so test method can temporarily use other browser than its test.
+ * Browser is started on first use, so tests, that don't touch driver, don't start it.
+ *
+ * @author gsikorskiy
+ */
+public class WebDriverStorage {
+
+	private static final ThreadLocal<Deque<Binding>> DRIVER_STORAGE = ThreadLocal.withInitial(ArrayDeque::new);
 
 	private WebDriverStorage() { }
 	
+	/**
+	 * Binds driver for the browser to current thread.
+	 * @param browser - configuration of browser.
+	 */
 	public static void addDriver(final Browser browser) {
-		WebDriverStorage.DRIVER_STORAGE.set(WebDriverFactory.getInstance(browser));
+		WebDriverStorage.DRIVER_STORAGE.get().push(new Binding(browser, null));
 	}
-	
+
+	/**
+	 * Binds already started driver to current thread.
+	 * It is released by removeDriver as any other driver.
+	 * @param browser - configuration of browser.
+	 * @param driver - driver of this browser.
+	 */
+	public static void addDriver(final Browser browser, final WebDriver driver) {
+		WebDriverStorage.DRIVER_STORAGE.get().push(new Binding(browser, driver));
+	}
+
+	/**
+	 * Retrieves driver of current thread. Browser is started, if it is the first call.
+	 * @return the last added driver or null if it was not added.
+	 */
 	public static WebDriver getDriver() {
-		return WebDriverStorage.DRIVER_STORAGE.get();
+		final Binding binding = WebDriverStorage.DRIVER_STORAGE.get().peek();
+		if (binding == null) {
+			return null;
+		}
+		if (binding.driver == null) {
+			binding.driver = WebDriverPool.isEnabled()
+					? WebDriverPool.lease(binding.browser)
+					: WebDriverFactory.getInstance(binding.browser);
+		}
+		return binding.driver;
+	}
+
+	/**
+	 * Retrieves driver of current thread without starting browser.
+	 * @return the last added driver or null if it was not added or its browser is not started yet.
+	 */
+	public static WebDriver peekDriver() {
+		final Binding binding = WebDriverStorage.DRIVER_STORAGE.get().peek();
+		return binding == null ? null : binding.driver;
+	}
+
+	/**
+	 * Retrieves browser of current driver.
+	 * @return browser, that was passed to addDriver, or null if driver was not added.
+	 */
+	public static Browser getBrowser() {
+		final Binding binding = WebDriverStorage.DRIVER_STORAGE.get().peek();
+		return binding == null ? null : binding.browser;
+	}
+
+	/**
+	 * Unbinds the last added driver from current thread, previous driver becomes current.
+	 * Pooled driver is returned to pool, other one is quit. Nothing is done for browser, that was not started.
+	 */
+	public static void removeDriver() {
+		final Deque<Binding> bindings = WebDriverStorage.DRIVER_STORAGE.get();
+		final Binding binding = bindings.poll();
+		if (bindings.isEmpty()) {
+			WebDriverStorage.DRIVER_STORAGE.remove();
+		}
+		if (binding != null && binding.driver != null) {
+			WebDriverPool.release(binding.driver);
+		}
+	}
+
+	/**
+	 * Driver with browser it was created for.
+	 */
+	private static final class Binding {
+		private final Browser browser;
+		private WebDriver driver;
+
+		private Binding(final Browser browser, final WebDriver driver) {
+			this.browser = browser;
+			this.driver = driver;
+		}
 	}
-}
+}
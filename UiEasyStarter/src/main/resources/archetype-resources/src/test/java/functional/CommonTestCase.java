@@ -5,18 +5,32 @@ package functional;
 
 import static reporting.CommonReporter.stepDescription;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.WebDriver;
 import org.testng.ITestContext;
+import org.testng.ITestResult;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.BeforeTest;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
+import org.testng.xml.XmlTest;
 
+import common.Environment;
 import webdriver.Browser;
 import webdriver.BrowserName;
 import webdriver.WebDriverFactory;
+import webdriver.WebDriverPool;
 import webdriver.WebDriverStorage;
 
 /**
@@ -26,6 +40,28 @@ import webdriver.WebDriverStorage;
  */
 public class CommonTestCase {
 
+	/**
+	 * Name of data provider with browser matrix.
+	 */
+	public static final String BROWSERS = "browsers";
+
+	/**
+	 * Starts pooled browsers before suite, if -Ddriver.pool.size is set.
+	 * Browsers are taken from parameters of every test of suite, test parameters override suite ones.
+	 * @param context - context of the first test, it gives access to the whole suite.
+	 */
+	@BeforeSuite
+	protected final void prewarmDrivers(final ITestContext context) {
+		if (!WebDriverPool.isEnabled()) {
+			return;
+		}
+		final Set<Browser> browsers = new LinkedHashSet<>();
+		for (final XmlTest test : context.getSuite().getXmlSuite().getTests()) {
+			browsers.add(createBrowser(test.getAllParameters()));
+		}
+		browsers.forEach(WebDriverPool::prewarm);
+	}
+
 	/**
 	 * Method to initialize driver before test. It uses TestNG @Parameters feature.
 	 * @param browserName - name of browser to test site. Default is Firefox.
@@ -38,29 +74,113 @@ public class CommonTestCase {
 						   @Optional("") final String browserVersion,
 						   @Optional("LINUX") final Platform platform) {
 
-		final Browser browser = new Browser(browserName);
-		browser.setVersion(browserVersion);
-		browser.setPlatform(platform.name());
+		WebDriverStorage.addDriver(createBrowser(browserName, browserVersion, platform));
+	}
+
+	/**
+	 * Browser matrix for one test method. Method with this data provider should have Browser parameter,
+	 * it is invoked for every browser from -Dbrowser.matrix in parallel,
+	 * and every invocation gets its own driver in its own thread.
+	 * Without the option browser of current test is used, the same as initDriver creates.
+	 * @param context - test context.
+	 * @return browsers.
+	 */
+	@DataProvider(name = BROWSERS, parallel = true)
+	public static Object[][] browserMatrix(final ITestContext context) {
+		if (Environment.BROWSER_MATRIX.isEmpty()) {
+			return new Object[][] {{createBrowser(context.getCurrentXmlTest().getAllParameters())}};
+		}
+		final List<String> matrix = Environment.BROWSER_MATRIX;
+		final Object[][] browsers = new Object[matrix.size()][];
+		for (int i = 0; i < browsers.length; i++) {
+			final String[] cell = matrix.get(i).split(":");
+			browsers[i] = new Object[] {createBrowser(BrowserName.valueOf(cell[0].toUpperCase()),
+					cell.length > 1 ? cell[1] : "",
+					cell.length > 2 ? Platform.valueOf(cell[2].toUpperCase()) : Platform.LINUX)};
+		}
+		return browsers;
+	}
+
+	/**
+	 * Binds driver of browser from data provider to thread of test method invocation.
+	 * @param parameters - parameters of test method.
+	 */
+	@BeforeMethod(alwaysRun = true)
+	protected final void bindMatrixDriver(final Object[] parameters) {
+		final Browser browser = findBrowser(parameters);
+		if (browser != null) {
+			WebDriverStorage.addDriver(browser);
+		}
+	}
 
-		WebDriverStorage.addDriver(browser);
+	/**
+	 * Releases driver of browser from data provider.
+	 * @param result - result of test method.
+	 */
+	@AfterMethod(alwaysRun = true)
+	protected final void releaseMatrixDriver(final ITestResult result) {
+		final Browser browser = findBrowser(result.getParameters());
+		if (browser != null && WebDriverStorage.getBrowser() == browser) {
+			WebDriverStorage.removeDriver();
+		}
 	}
 
 	/**
 	 * Adds webdriver to current test context.
+	 * In fast lane mode it is skipped, because browser is started only if some test needs it.
 	 * @param context - test context.
 	 */
 	@BeforeClass(alwaysRun = true)
 	protected final void setUpDriverToContext(final ITestContext context) {
+		if (Environment.FAST_LANE) {
+			return;
+		}
 		context.setAttribute(WebDriverFactory.DRIVER_ATTRIBUTE_NAME, this.getWebDriver());
 	}
 
 	/**
-	 * Close browser after test.
+	 * Close browser after test. Pooled browser is returned to pool.
 	 */
 	@AfterTest(alwaysRun = true)
 	protected final void tearDown() {
 		stepDescription("Cleaning up after test.");
-		this.getWebDriver().quit();
+		WebDriverStorage.removeDriver();
+	}
+
+	/**
+	 * Close all pooled browsers after suite.
+	 */
+	@AfterSuite(alwaysRun = true)
+	protected final void shutdownDrivers() {
+		WebDriverPool.shutdown();
+	}
+
+	private static Browser createBrowser(final BrowserName browserName,
+			final String browserVersion, final Platform platform) {
+		final Browser browser = new Browser(browserName);
+		browser.setVersion(browserVersion);
+		browser.setPlatform(platform.name());
+		return browser;
+	}
+
+	/**
+	 * Creates browser from BrowserName, Version and Platform parameters with the same defaults as initDriver.
+	 */
+	private static Browser createBrowser(final Map<String, String> parameters) {
+		final String name = parameters.get("BrowserName");
+		final String platform = parameters.get("Platform");
+		return createBrowser(name == null ? BrowserName.FIREFOX : BrowserName.valueOf(name.toUpperCase()),
+				parameters.getOrDefault("Version", ""),
+				platform == null ? Platform.LINUX : Platform.valueOf(platform.toUpperCase()));
+	}
+
+	private static Browser findBrowser(final Object[] parameters) {
+		for (final Object parameter : parameters) {
+			if (parameter instanceof Browser) {
+				return (Browser) parameter;
+			}
+		}
+		return null;
 	}
 
 	private WebDriver getWebDriver() {
@@ -9,15 +9,25 @@ import static reporting.CommonReporter.printInfo;
 import org.testng.annotations.Test;
 
 import common.Environment;
+import execution.DomOnly;
 import pages.MainPage;
 import pages.Page;
+import webdriver.Browser;
 
 public class MainPageTest extends CommonTestCase{
 
+	@DomOnly
 	@Test
 	public void open() {
 		methodDescription("Open main page");
 		final MainPage main = Page.open(Environment.SITE_TO_TEST.toString(), MainPage.class);
 		printInfo(main.getHeaderText());
 	}
+
+	@Test(dataProvider = BROWSERS)
+	public void openInAllBrowsers(final Browser browser) {
+		methodDescription("Open main page in " + browser);
+		final MainPage main = Page.open(Environment.SITE_TO_TEST.toString(), MainPage.class);
+		printInfo(main.getHeaderText());
+	}
 }